@@ -0,0 +1,167 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.benchmarks;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Random;
+
+import com.sqldashboards.dashy.ColumnarResultSet;
+import com.sqldashboards.dashy.SimpleResultSet;
+
+/**
+ * Deterministic synthetic tables shared by all benchmarks so their results are comparable.
+ * Tables are either narrow or wide and made of a single family of column types,
+ * the same data can be produced in memory as a {@link SimpleResultSet} or inserted into a database.
+ */
+public class BenchData {
+
+	public static enum Width { 
+		NARROW(4), WIDE(32);
+		final int columns;
+		Width(int columns) { this.columns = columns; }
+	}
+	
+	/** NUMERIC cycles long/double/int/double, STRING cycles a 100 symbol column and a unique id column, TEMPORAL cycles timestamp/date/time. */
+	public static enum ColumnType { NUMERIC, STRING, TEMPORAL }
+
+	private static final long START_MILLIS = Timestamp.valueOf("2023-01-02 09:00:00").getTime();
+	private static final String[] SYMS = new String[100];
+	static {
+		for(int i = 0; i < SYMS.length; i++) {
+			SYMS[i] = "SYM" + i;
+		}
+	}
+
+	public static String[] getColumnNames(Width width) {
+		String[] r = new String[width.columns];
+		for(int c = 0; c < r.length; c++) {
+			r[c] = "C" + c;
+		}
+		return r;
+	}
+	
+	/** @return One primitive or typed array per column in the form {@link SimpleResultSet} expects. */
+	public static Object[] getColumnValues(int rows, Width width, ColumnType columnType) {
+		Random rand = new Random(42);
+		Object[] cols = new Object[width.columns];
+		for(int c = 0; c < cols.length; c++) {
+			cols[c] = getColumn(rand, c, rows, columnType);
+		}
+		return cols;
+	}
+	
+	private static Object getColumn(Random rand, int c, int rows, ColumnType columnType) {
+		switch(columnType) {
+		case NUMERIC:
+			if(c % 4 == 0) {
+				long[] l = new long[rows];
+				for(int r = 0; r < rows; r++) { l[r] = r; }
+				return l;
+			} else if(c % 4 == 2) {
+				int[] n = new int[rows];
+				for(int r = 0; r < rows; r++) { n[r] = rand.nextInt(10_000); }
+				return n;
+			}
+			double[] d = new double[rows];
+			for(int r = 0; r < rows; r++) { d[r] = 100 + rand.nextGaussian(); }
+			return d;
+		case STRING:
+			String[] s = new String[rows];
+			for(int r = 0; r < rows; r++) { 
+				s[r] = c % 2 == 0 ? SYMS[rand.nextInt(SYMS.length)] : ("ORDER-" + c + "-" + r); 
+			}
+			return s;
+		default:
+			if(c % 3 == 0) {
+				Timestamp[] ts = new Timestamp[rows];
+				for(int r = 0; r < rows; r++) { ts[r] = new Timestamp(START_MILLIS + r * 37L); }
+				return ts;
+			} else if(c % 3 == 1) {
+				Date[] dt = new Date[rows];
+				for(int r = 0; r < rows; r++) { dt[r] = new Date(START_MILLIS - (r % 365) * 86_400_000L); }
+				return dt;
+			}
+			Time[] tm = new Time[rows];
+			for(int r = 0; r < rows; r++) { tm[r] = new Time(START_MILLIS + rand.nextInt(86_400_000)); }
+			return tm;
+		}
+	}
+	
+	public static SimpleResultSet getSimpleResultSet(int rows, Width width, ColumnType columnType) throws SQLException {
+		SimpleResultSet rs = new SimpleResultSet(getColumnNames(width), getColumnValues(rows, width, columnType));
+		rs.beforeFirst(); // SimpleResultSet starts on the first row
+		return rs;
+	}
+	
+	/** @return The table as it would be held in the results cache. */
+	public static ColumnarResultSet getCachedResultSet(int rows, Width width, ColumnType columnType) throws SQLException {
+		return ColumnarResultSet.populate(getSimpleResultSet(rows, width, columnType));
+	}
+	
+	private static String getSqlType(ColumnType columnType, int c) {
+		switch(columnType) {
+		case NUMERIC: return c % 4 == 0 ? "BIGINT" : c % 4 == 2 ? "INT" : "DOUBLE";
+		case STRING: return "VARCHAR(64)";
+		default: return c % 3 == 0 ? "TIMESTAMP" : c % 3 == 1 ? "DATE" : "TIME";
+		}
+	}
+	
+	/** (Re)create tableName in the database containing the same data as {@link #getSimpleResultSet(int, Width, ColumnType)}. */
+	public static void createTable(Connection conn, String tableName, int rows, Width width, ColumnType columnType) throws SQLException {
+		StringBuilder ddl = new StringBuilder("CREATE TABLE " + tableName + "(");
+		StringBuilder ins = new StringBuilder("INSERT INTO " + tableName + " VALUES(");
+		for(int c = 0; c < width.columns; c++) {
+			ddl.append(c == 0 ? "" : ",").append("C").append(c).append(" ").append(getSqlType(columnType, c));
+			ins.append(c == 0 ? "?" : ",?");
+		}
+		try(Statement st = conn.createStatement()) {
+			st.execute("DROP TABLE IF EXISTS " + tableName);
+			st.execute(ddl.append(")").toString());
+		}
+		ResultSet rs = getSimpleResultSet(rows, width, columnType);
+		try(PreparedStatement ps = conn.prepareStatement(ins.append(")").toString())) {
+			int r = 0;
+			while(rs.next()) {
+				for(int c = 1; c <= width.columns; c++) {
+					ps.setObject(c, rs.getObject(c));
+				}
+				ps.addBatch();
+				if(++r % 5_000 == 0) {
+					ps.executeBatch();
+				}
+			}
+			ps.executeBatch();
+		}
+	}
+}
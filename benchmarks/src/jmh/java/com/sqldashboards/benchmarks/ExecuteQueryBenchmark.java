@@ -0,0 +1,89 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.benchmarks;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.sqldashboards.benchmarks.BenchData.ColumnType;
+import com.sqldashboards.benchmarks.BenchData.Width;
+import com.sqldashboards.dashy.ServerConfig;
+import com.sqldashboards.shared.ConnectionManager;
+import com.sqldashboards.shared.JdbcTypes;
+import com.timestored.kdb.QueryResultI;
+
+/**
+ * {@link ConnectionManager#executeQuery(ServerConfig, String)} against an in-memory H2 database,
+ * this includes borrowing a pooled connection, running the query and copying all rows into the results cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExecuteQueryBenchmark {
+
+	private static final String URL = "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1";
+	
+	@Param({"1000", "25000", "100000"}) public int rows;
+	@Param public Width width;
+	@Param public ColumnType columnType;
+	
+	private Connection conn;
+	private ConnectionManager connectionManager;
+	private ServerConfig serverConfig;
+
+	@Setup public void setup() throws SQLException {
+		// Held open so the in-memory database lives for the whole trial.
+		conn = DriverManager.getConnection(URL, "sa", "");
+		BenchData.createTable(conn, "T", rows, width, columnType);
+		// Port zero means database holds the full JDBC URL.
+		serverConfig = new ServerConfig("localhost", 0, "sa", "", "bench", JdbcTypes.H2, URL);
+		connectionManager = ConnectionManager.newInstance();
+		connectionManager.addServer(serverConfig);
+	}
+	
+	@TearDown public void teardown() throws SQLException {
+		connectionManager.close();
+		conn.close();
+	}
+
+	@Benchmark public QueryResultI executeQuery() throws SQLException, IOException {
+		return connectionManager.executeQuery(serverConfig, "SELECT * FROM T");
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.benchmarks;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.kx.c;
+import com.kx.c.Flip;
+import com.kx.c.KException;
+
+/**
+ * kdb IPC encoding of a quote table with and without compression.
+ * Compare deserializeCompressed against deserializeRaw to see what decompression costs per message
+ * and against the compression ratio printed at setup to decide when enabling compress on a server pays off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IpcCompressionBenchmark {
+
+	@Param({"10000", "100000"}) public int rows;
+
+	private static final String[] SYMS = { "AAPL", "MSFT", "GOOG", "AMZN", "META", "NVDA", "TSLA", "JPM", "BAC", "XOM",
+			"IBM", "ORCL", "INTC", "CSCO", "KO", "PEP", "WMT", "DIS", "NFLX", "ADBE" };
+
+	private Flip quotes;
+	private byte[] raw;
+	private byte[] compressed;
+	private c k;
+
+	@Setup public void setup() throws IOException {
+		quotes = getQuotes(rows);
+		k = new c();
+		raw = k.serialize(2, quotes, false);
+		compressed = k.serialize(2, quotes, true);
+		System.out.println("quotes rows=" + rows + " raw=" + raw.length + " compressed=" + compressed.length);
+	}
+
+	/**
+	 * sym, time, bid, ask, bsize, asize laid out like a date partition of an HDB quote table: grouped by sym then time,
+	 * prices moving a cent at a time and sizes in round lots that only change on some quotes.
+	 */
+	static Flip getQuotes(int rows) {
+		Random rand = new Random(42);
+		String[] sym = new String[rows];
+		Instant[] time = new Instant[rows];
+		double[] bid = new double[rows];
+		double[] ask = new double[rows];
+		int[] bsize = new int[rows];
+		int[] asize = new int[rows];
+		int perSym = (rows + SYMS.length - 1) / SYMS.length;
+		for(int i = 0; i < rows; i++) {
+			if(i % perSym == 0) {
+				bid[i] = 20 + rand.nextInt(400);
+				ask[i] = bid[i] + 0.01;
+				bsize[i] = asize[i] = 100;
+				time[i] = Instant.parse("2023-01-02T09:30:00Z");
+			} else {
+				int move = rand.nextInt(10) < 3 ? rand.nextInt(3) - 1 : 0;
+				bid[i] = Math.round(bid[i - 1] * 100 + move) / 100.0;
+				ask[i] = Math.round(bid[i] * 100 + 1 + (rand.nextInt(10) == 0 ? 1 : 0)) / 100.0;
+				bsize[i] = rand.nextInt(10) < 3 ? 100 * (1 + rand.nextInt(20)) : bsize[i - 1];
+				asize[i] = rand.nextInt(10) < 3 ? 100 * (1 + rand.nextInt(20)) : asize[i - 1];
+				time[i] = time[i - 1].plusNanos(rand.nextInt(200_000_000));
+			}
+			sym[i] = SYMS[i / perSym];
+		}
+		return new Flip(new c.Dict(new String[] { "sym", "time", "bid", "ask", "bsize", "asize" },
+				new Object[] { sym, time, bid, ask, bsize, asize }));
+	}
+
+	@Benchmark public Object deserializeRaw() throws KException, IOException {
+		return k.deserialize(raw);
+	}
+
+	@Benchmark public Object deserializeCompressed() throws KException, IOException {
+		return k.deserialize(compressed);
+	}
+
+	@Benchmark public byte[] serializeCompressed() throws IOException {
+		return k.serialize(2, quotes, true);
+	}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.benchmarks;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.sqldashboards.benchmarks.BenchData.ColumnType;
+import com.sqldashboards.benchmarks.BenchData.Width;
+import com.sqldashboards.dashy.ColumnarResultSet;
+import com.sqldashboards.webby.ResultSetSerializer;
+import com.sqldashboards.webby.ResultSetSerializer.Format;
+
+/**
+ * {@link ResultSetSerializer#toString(java.sql.ResultSet, boolean)} of a cached result to the JSON sent to browsers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializeBenchmark {
+
+	@Param({"1000", "25000", "100000"}) public int rows;
+	@Param public Width width;
+	@Param public ColumnType columnType;
+	@Param public Format format;
+	
+	private ColumnarResultSet rs;
+	private ResultSetSerializer serializer;
+
+	@Setup public void setup() throws SQLException {
+		rs = BenchData.getCachedResultSet(rows, width, columnType);
+		serializer = new ResultSetSerializer(format);
+	}
+
+	@Benchmark public String toJson() throws IOException {
+		return serializer.toString(rs.createShared(), false);
+	}
+}
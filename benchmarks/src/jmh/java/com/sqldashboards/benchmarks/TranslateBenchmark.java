@@ -0,0 +1,78 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.sqldashboards.dashy.QueryEngine2.ArgVal;
+import com.sqldashboards.dashy.QueryTranslator;
+import com.sqldashboards.dashy.ServerConfig;
+import com.sqldashboards.dashy.TranslationResult;
+import com.sqldashboards.shared.JdbcTypes;
+
+/**
+ * {@link QueryTranslator#translate(String, String, ServerConfig)} of a typical dashboard query
+ * where every argument type must be found and substituted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TranslateBenchmark {
+
+	private static final String QUERY = "SELECT time,sym,price,size FROM trade WHERE sym IN ({syms}) AND venue=({venue})"
+			+ " AND time>({from}) AND size>({minSize}) ORDER BY time DESC LIMIT 1000";
+	
+	@Param({"H2", "KDB"}) public String jdbcType;
+	
+	private QueryTranslator queryTranslator;
+	private ServerConfig serverConfig;
+
+	@Setup public void setup() {
+		Map<String, ArgVal> args = new HashMap<>();
+		args.put("syms", ArgVal.l("AAPL", "MSFT", "GOOG"));
+		args.put("venue", ArgVal.s("NYSE"));
+		args.put("from", ArgVal.d("2023-01-02", "09:30:00"));
+		args.put("minSize", ArgVal.n(100));
+		queryTranslator = new QueryTranslator(args);
+		serverConfig = new ServerConfig("localhost", 5000, "", "", "bench", JdbcTypes.valueOf(jdbcType));
+	}
+
+	@Benchmark public TranslationResult translate() {
+		return queryTranslator.translate(QUERY, "", serverConfig);
+	}
+}
@@ -27,8 +27,8 @@
 import React, { useState, useEffect, Component, SetStateAction, Dispatch } from 'react';
 import axios from 'axios';
 //import '../dbsprites.css';
-import { Number, String, Array, Record, Static, Undefined, Partial } from 'runtypes';
-import { Alert, Button, FormGroup, HTMLTable, InputGroup, Intent, Spinner, MaybeElement, Icon, IconName, HTMLSelect, SpinnerSize, Collapse, NonIdealState, RadioGroup, Radio } from '@blueprintjs/core';
+import { Number, String, Array, Record, Static, Undefined, Partial, Boolean } from 'runtypes';
+import { Alert, Button, FormGroup, HTMLTable, InputGroup, Intent, Spinner, MaybeElement, Icon, IconName, HTMLSelect, SpinnerSize, Collapse, NonIdealState, RadioGroup, Radio, Checkbox } from '@blueprintjs/core';
 import { SERVER } from '../engine/queryEngine';
 import { MyInput, MyOverlay } from './CommonComponents';
 import { Enumify } from 'enumify';
@@ -39,7 +39,7 @@ import { analytics } from '../App';
 import { useCacheThenUpdate } from './hooks';
 
 const newServerConfig: ServerConfig = { id: -1, name: "", host: "localhost", port: 5000, jdbcType: "KDB", database: "", username: "", password: "", 
-                url: undefined, queryWrapPre:"", queryWrapPost:"" };
+                url: undefined, queryWrapPre:"", queryWrapPost:"", compress:false, queryTimeout:0 };
 
 const ServerConfigR = Record({
     id: Number,
@@ -53,7 +53,9 @@ const ServerConfigR = Record({
     username: String.Or(Undefined),
     password: String.Or(Undefined),
     queryWrapPre: String.Or(Undefined),
-    queryWrapPost: String.Or(Undefined),}));
+    queryWrapPost: String.Or(Undefined),
+    compress: Boolean.Or(Undefined),
+    queryTimeout: Number.Or(Undefined),}));
 export type ServerConfig = Static<typeof ServerConfigR>;
 
 
@@ -313,12 +315,17 @@ class ConnectionsEditor extends Component<EditorProps, ConnectionsEditorState> {
                 {/* <p className="bp4-text-muted">If the username/password is supplied it will be shared by all users.
                     <br />If not supplied, each user will have to supply their database login details.</p> */}
 
+                <MyInput label="Query Timeout:" value={sc.queryTimeout ? "" + sc.queryTimeout : ""} name="queryTimeout" 
+                    onChange={e => { setMerged("queryTimeout", parseInt(e.currentTarget.value) || 0) }} placeholder="seconds, blank for none" />
+
                 {isKDB &&  
                     <div>
                         <Button onClick={() => this.setState({showAdvanced:!this.state.showAdvanced})}>{(this.state.showAdvanced ? "Hide" : "Show") + " Advanced Options"}</Button>
                         <Collapse isOpen={this.state.showAdvanced}>
                         <MyInput label="Query Pre-Wrap:" value={sc.queryWrapPre} name="queryWrapPre" onChange={handleChange} />
                         <MyInput label="Query Post-Wrap:" value={sc.queryWrapPost} name="queryWrapPost" onChange={handleChange} />
+                        <Checkbox label="Compress messages sent to server (for servers over a WAN)" checked={sc.compress === true} 
+                            onChange={e => setMerged("compress", e.currentTarget.checked)} />
                         </Collapse>
                     </div>}
 
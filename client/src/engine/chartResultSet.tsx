@@ -117,12 +117,37 @@ export interface RsData {
     tbl:{
         data:Array<{[key:string] : number | string | Date | null}>,
         types:DataTypeMap,
+        /** Only present when the server sent the columnar format, see {@link fromColumns}. */
+        columns?:{[key:string] : Array<number | string | Date | null>},
     }
     exception?:string;
     console?:string;
     k?:any;
     exceededMaxRows?:boolean;
 }
+/** Convert a table received in the columnar format, one array per column, to the row objects used everywhere else. */
+export function fromColumns(rsdata:RsData):RsData {
+    const cols = rsdata.tbl?.columns;
+    if(cols !== undefined) {
+        const names = Object.keys(cols);
+        const n = names.length > 0 ? cols[names[0]].length : 0;
+        const data:Array<{[key:string] : number | string | Date | null}> = new Array(n);
+        for (let i = 0; i < n; i++) {
+            const row:{[key:string] : number | string | Date | null} = {};
+            names.forEach(c => { row[c] = cols[c][i]; });
+            data[i] = row;
+        }
+        rsdata.tbl = { data, types: rsdata.tbl.types };
+    }
+    return rsdata;
+}
+
+/** Row changes sent instead of a full table, applied in order to the previous table. Update indices are after deletes. */
+export interface RsDelta {
+    ops:Array<{ op:"delete"|"update"|"append", index?:number[], rows?:Array<{[key:string] : number | string | Date | null}> }>;
+    exceededMaxRows?:boolean;
+}
+
 export const EmptyRsData:RsData = { tbl: { data:[], types: {} }, exception:undefined, console:undefined, k:undefined}
 
 
@@ -24,7 +24,7 @@
  *
  ******************************************************************************/
  
-import { EmptySmartRs, RsData, SmartRs } from "./chartResultSet";
+import { EmptySmartRs, fromColumns, RsData, RsDelta, SmartRs } from "./chartResultSet";
 import { LRUBuffer, Websocket, WebsocketBuilder } from 'websocket-ts';
 import { Button, MaybeElement, NonIdealState } from '@blueprintjs/core';
 import { useState } from 'react';
@@ -46,6 +46,8 @@ export const SERVER = (rootURL !== undefined && rootURL.length>0 ? rootURL + 'ap
 
 export type ArgType = "number"|"string"|"strings"|"date";
 export type ArgMap = { [argKey: string]: string[] };
+/** Milliseconds between runs the server is actually using for a query that is slower than its refresh period allows. */
+export type RefreshRate = { period: number, queryMillis: number };
 type ArgTypeMap = { [argKey: string]: ArgType };
 
 
@@ -131,6 +133,24 @@ function mapToMaps(argMapWithTypes: { [argKey: string]: any }):[ArgMap,ArgTypeMa
 	return [m,tm];
 }	
 
+/** Apply the row changes to a copy of the previous table, returning the new table. */
+export function applyDelta(prev: RsData, delta: RsDelta): RsData {
+	let data = prev.tbl.data;
+	delta.ops.forEach(o => {
+		if(o.op === "delete" && o.index) {
+			const dels = new Set(o.index);
+			data = data.filter((_r, i) => !dels.has(i));
+		} else if(o.op === "update" && o.index && o.rows) {
+			data = data === prev.tbl.data ? [...data] : data;
+			const rows = o.rows;
+			o.index.forEach((idx, i) => { data[idx] = rows[i]; });
+		} else if(o.op === "append" && o.rows) {
+			data = [...data, ...o.rows];
+		}
+	});
+	return { ...prev, tbl: { ...prev.tbl, data }, exceededMaxRows: delta.exceededMaxRows === true };
+}
+
 export type SetArgsType = (argMapWithTypes: { [argKey: string]: any })=>void;
 
 
@@ -171,6 +191,10 @@ export default class QueryEngine {
 	private listeners: Array<QueryEngineListener> = [];
 	public queryables: Array<Queryable> = [];
 	private queryLastResultCache: { [s: string]: RsData } = {};
+	/** Last table received per queryable that the server sends row changes against. */
+	private deltaBase: { [deltaKey: string]: RsData } = {};
+	/** Refresh rate per queryable where the server reported it differs from the requested refresh period. */
+	private refreshRates: { [rateKey: string]: RefreshRate } = {};
 	private ws: Websocket | undefined = undefined;
 	private lastResultReceivedTime = new Date();
 	public argMap: ArgMap = {};
@@ -213,6 +237,11 @@ export default class QueryEngine {
 						ws.send("setdash:" + this.dashId + "," + this.versionId);
 						const args = Object.entries(this.argMap).map(([argKey,argVals]) => { return { argKey, argVals, argType:this.argTypeMap[argKey]} });
 						ws.send("setk:" + JSON.stringify(args));
+						ws.send("setformat:columns"); // column names sent once per table rather than once per row
+						this.deltaBase = {}; // server state is per connection
+						this.refreshRates = {};
+						// No key columns as widgets don't configure any, the server matches rows by position.
+						ws.send("setdelta:" + JSON.stringify({ enabled: true, keys: [] }));
 					})
 					.onClose((_i, _ev) => { console.log("closed"); this.listeners.forEach(l => l.connectionChange(false)); })
 					.onError((_i, _ev) => { console.log("error") })
@@ -242,6 +271,12 @@ export default class QueryEngine {
 	}
 
 	addListener(listener: QueryEngineListener) { this.listeners.push(listener); }
+
+	/** @returns The refresh rate the server slowed this query to, undefined if it runs at its own refresh period. */
+	getRefreshRate(queryable: Queryable): RefreshRate | undefined { 
+		const rate = this.refreshRates[toRateKey(queryable)];
+		return rate && rate.period !== queryable.refreshPeriod ? rate : undefined;
+	}
 	addQueryable(queryable: Queryable) {
 		this.queryables.push(queryable);
 		this.ws?.send("addq:" + JSON.stringify(queryable));
@@ -258,6 +293,10 @@ export default class QueryEngine {
 	removeQueryable(queryable: Queryable) {
 		this.ws?.send("subq:" + JSON.stringify(queryable));
 		this.queryables = this.queryables.filter(ql => ql !== queryable);
+		const qKey = toDeltaKey(queryable);
+		if(!this.queryables.some(q => toDeltaKey(q) === qKey)) {
+			delete this.deltaBase[qKey];
+		}
 	}
 
 	setArgsWithType:SetArgsType = (argMapWithTypes: { [argKey: string]: any }) => {
@@ -308,7 +347,8 @@ export default class QueryEngine {
 					this.ws?.send("pong:" + (args.length > 0 ? args[0] : "?" ));
 					return; // Ignore it's just an ACK
 				}
-				if(ev.data.startsWith("addq:") || ev.data.startsWith("subq:") || ev.data.startsWith("setk:")) {
+				if(ev.data.startsWith("addq:") || ev.data.startsWith("subq:") || ev.data.startsWith("setk:") 
+						|| ev.data.startsWith("setformat:") || ev.data.startsWith("setdelta:") || ev.data.startsWith("snap:")) {
 					return; // Ignore it's just an ACK
 				}
 				if(ev.data.startsWith("nochange:")) {
@@ -319,10 +359,29 @@ export default class QueryEngine {
 					const d = JSON.parse(ev.data);
 					const queryable: Queryable = d.queryable;
 					// eslint-disable-next-line no-prototype-builtins
+					if (d.hasOwnProperty("refresh")) {
+						const rate = d.refresh as RefreshRate;
+						this.refreshRates[toRateKey(queryable)] = rate;
+						console.info("Query refreshing every " + rate.period + "ms as it takes " + rate.queryMillis + "ms: " + queryable.query);
+						this.listeners.forEach(l => l.refreshRateChanged && l.refreshRateChanged(queryable, rate));
+						return;
+					}
+					// eslint-disable-next-line no-prototype-builtins
 					if (d.hasOwnProperty("error") && d.error && typeof d.error === "string") {
 						this.notifyListenersError(queryable, d.error);
 					} else {
-						const rsdata: RsData = d.data;
+						const qKey = toDeltaKey(queryable);
+						let rsdata: RsData = d.data && fromColumns(d.data);
+						// eslint-disable-next-line no-prototype-builtins
+						if (d.hasOwnProperty("delta")) {
+							const prev = this.deltaBase[qKey];
+							if(prev === undefined) {
+								this.ws?.send("snap:" + JSON.stringify(queryable)); // Can't apply changes without the previous table.
+								return;
+							}
+							rsdata = applyDelta(prev, d.delta as RsDelta);
+						}
+						this.deltaBase[qKey] = rsdata;
 						this.notifyListenersSuccess(queryable, new SmartRs(rsdata), rsdata.exceededMaxRows === true);
 						this.queryLastResultCache[queryable.query] = rsdata;
 						if (Object.keys(this.queryLastResultCache).length > 1000) {
@@ -369,10 +428,11 @@ export default class QueryEngine {
 			const [myArgMap,myArgTypeMap] = mapToMaps(params);
 			const argsArray = this.toArgsArray(myArgMap,myArgTypeMap);
 			this.listeners.forEach(l => l.sendingQuery(queryable,myArgMap));
-			a = await axios.post<RsData>(SERVER + "/a.json/" + queryable?.serverName, {query:queryable?.query, argsArray:argsArray, serverCmd:queryable?.serverCmd});
+			a = await axios.post<RsData>(SERVER + "/a.json/" + queryable?.serverName, {query:queryable?.query, argsArray:argsArray, serverCmd:queryable?.serverCmd, format:"columns"});
 		} else {
-			a = await axios.post<RsData>(SERVER + "/a.json/" + queryable?.serverName, queryable?.query, {headers:{"Content-Type":"text/plain"}});
+			a = await axios.post<RsData>(SERVER + "/a.json/" + queryable?.serverName + "?format=columns", queryable?.query, {headers:{"Content-Type":"text/plain"}});
 		}
+		a.data && fromColumns(a.data);
 		try {
 			// Must first check for exception as it's only present if problem.
 			if(a.data && a.data.exception && a.data.exception !== undefined && a.data.exception.length > 0) {
@@ -415,6 +475,16 @@ export function isSameQuery(p: Queryable, q: Queryable): boolean {
 	return p.serverName === q.serverName && p.query === q.query && p.serverCmd === q.serverCmd;
 }
 
+/** Key that is the same for queryables where {@link isSameQuery} is true. */
+function toRateKey(q: Queryable): string {
+	return JSON.stringify([q.serverName, q.query, q.serverCmd ?? ""]);
+}
+
+/** Key of the last table received per queryable, fields listed so it matches whichever side serialized the queryable. */
+function toDeltaKey(q: Queryable): string {
+	return JSON.stringify([q.serverName, q.query, q.refreshPeriod, q.serverCmd ?? ""]);
+}
+
 export class Queryable {
 	constructor(readonly serverName: string, readonly query: string, readonly refreshPeriod: number, readonly serverCmd: string = "") { }
 }
@@ -426,6 +496,8 @@ export interface QueryEngineListener {
 	argChange(argKey: string, argVals: string[]): void;
 	argsChanged(argMap:ArgMap): void;
 	connectionChange(connected: boolean, errorText?:string): void;
+	/** Server changed how often it refreshes the query as it's slow, or restored its refresh period. */
+	refreshRateChanged?(queryable: Queryable, rate: RefreshRate): void;
 }
 
 
@@ -130,6 +130,20 @@ public class c implements AutoCloseable {
    * greater than 2000 bytes and connection is not localhost)
    */
   boolean zip;
+  /**
+   * Buffers kept between messages so that steady traffic, e.g. a tickerplant subscription, does not allocate per message.
+   * Messages larger than {@link #maxReusedBufferSize} use a new array that is not kept.
+   */
+  public static final int DEFAULT_MAX_REUSED_BUFFER_SIZE=4*1024*1024;
+  private boolean reuseBuffers=true;
+  private int maxReusedBufferSize=DEFAULT_MAX_REUSED_BUFFER_SIZE;
+  private final byte[] msgHeader=new byte[8];
+  private byte[] readBuff;
+  private byte[] uncompressBuff;
+  private byte[] writeBuff;
+  private byte[] compressBuff;
+  private final int[] uncompressTable=new int[256];
+  private final int[] compressTable=new int[256];
 public String host;
 public int port;
 
@@ -168,6 +182,36 @@ private static char[][] toChars(final String[] monadics) {
   public void zip(boolean b){
     zip=b;
   }
+  /**
+   * Sets whether the read and write buffers are kept and reused between messages rather than allocated for each one.
+   * @param b true to reuse buffers. Default is true.
+   */
+  public void setReuseBuffers(boolean b){
+    reuseBuffers=b;
+    if(!b){
+      readBuff=uncompressBuff=writeBuff=compressBuff=null;
+    }
+  }
+  /**
+   * @param bytes The largest buffer kept for reuse, larger messages allocate their own array each time.
+   * Default is {@link #DEFAULT_MAX_REUSED_BUFFER_SIZE}
+   */
+  public void setMaxReusedBufferSize(int bytes){
+    maxReusedBufferSize=bytes;
+  }
+  /**
+   * @return buf if it can hold n bytes, otherwise a new array of at least n bytes rounded up to a power of two
+   * so that slowly growing messages do not reallocate every time.
+   */
+  private static byte[] grow(byte[] buf,int n){
+    if(buf!=null&&buf.length>=n)
+      return buf;
+    int size=n<=64?64:Integer.highestOneBit(n-1)<<1;
+    return new byte[size<n?n:size];
+  }
+  private boolean reusable(int n){
+    return reuseBuffers&&n<=maxReusedBufferSize;
+  }
   /**
    * Prepare socket for kdb+ ipc comms
    * @param x socket to setup
@@ -535,7 +579,12 @@ private static char[][] toChars(final String[] monadics) {
     }
     public String getStackMessage() { return stackMessage; }
   }
-  private void compress(){
+  /**
+   * Compress the message in wBuff. If it does not shrink wBuff is left unchanged.
+   * @param pooled true to compress into the reused buffer and leave wBuff longer than the message,
+   * 	otherwise wBuff is set to a new array of exactly the compressed length.
+   */
+  private void compress(boolean pooled){
     byte i=0;
     boolean g;
     final int origSize=wBuffPos;
@@ -543,17 +592,23 @@ private static char[][] toChars(final String[] monadics) {
     int h0=0;
     int h=0;
     byte[] y=wBuff;
-    wBuff=new byte[y.length/2];
+    int e=origSize/2;
+    if(pooled&&reusable(e)){
+      wBuff=compressBuff=grow(compressBuff,e);
+    }else{
+      wBuff=new byte[e];
+      pooled=false;
+    }
     int c=12;
     int d=c;
-    int e=wBuff.length;
     int p=0;
     int q;
     int r;
     int s0=0;
     int s=8;
     int t=wBuffPos;
-    int[] a=new int[256];
+    int[] a=compressTable;
+    Arrays.fill(a,0);
     System.arraycopy(y,0,wBuff,0,4);
     wBuff[2]=1;
     wBuffPos=8;
@@ -595,39 +650,52 @@ private static char[][] toChars(final String[] monadics) {
     wBuffPos=4;
     w(d);
     wBuffPos=d;
-    wBuff=Arrays.copyOf(wBuff,wBuffPos);
+    if(!pooled)
+      wBuff=Arrays.copyOf(wBuff,wBuffPos);
   }
+  /**
+   * Expand the compressed message in rBuff. Each flag byte covers the next 8 tokens, a set bit is a back reference
+   * (hash table index, run length) copying 2+n bytes seen earlier, a clear bit is one literal byte.
+   * Runs that do not overlap their destination are copied with arraycopy, the hash table is only
+   * updated from the bytes the compressor also hashed so the two stay in step.
+   */
   private void uncompress(){
-    int n=0;
-    int r=0;
-    int f=0;
+    final int size=ri();
+    byte[] dst;
+    if(reusable(size)){
+      dst=uncompressBuff=grow(uncompressBuff,size);
+    }else{
+      dst=new byte[size];
+    }
+    final byte[] src=rBuff;
+    final int[] aa=uncompressTable;
+    Arrays.fill(aa,0);
+    int d=rBuffPos;
     int s=8;
     int p=s;
-    short i=0;
-    byte[] dst=new byte[ri()];
-    int d=rBuffPos;
-    int[] aa=new int[256];
-    while(s<dst.length){
-      if(i==0){
-        f=0xff&(int)rBuff[d++];
-        i=1;
+    while(s<size){
+      final int f=0xff&(int)src[d++];
+      for(int i=1;i<256&&s<size;i<<=1){
+        if((f&i)!=0){
+          int r=aa[0xff&(int)src[d++]];
+          dst[s++]=dst[r++];
+          dst[s++]=dst[r++];
+          final int n=0xff&(int)src[d++];
+          while(p<s-1)
+            aa[(0xff&(int)dst[p])^(0xff&(int)dst[p+1])]=p++;
+          if(r+n<=s){
+            System.arraycopy(dst,r,dst,s,n);
+          }else{
+            for(int m=0;m<n;m++)
+              dst[s+m]=dst[r+m];
+          }
+          p=s+=n;
+        }else{
+          dst[s++]=src[d++];
+          if(p<s-1)
+            aa[(0xff&(int)dst[p])^(0xff&(int)dst[p+1])]=p++;
+        }
       }
-      if((f&i)!=0){
-        r=aa[0xff&(int)rBuff[d++]];
-        dst[s++]=dst[r++];
-        dst[s++]=dst[r++];
-        n=0xff&(int)rBuff[d++];
-        for(int m=0;m<n;m++)
-          dst[s+m]=dst[r+m];
-      }else
-        dst[s++]=rBuff[d++];
-      while(p<s-1)
-        aa[(0xff&(int)dst[p])^(0xff&(int)dst[p+1])]=p++;
-      if((f&i)!=0)
-        p=s+=n;
-      i*=2;
-      if(i==256)
-        i=0;
     }
     rBuff=dst;
     rBuffPos=8;
@@ -1438,19 +1506,35 @@ private static char[][] toChars(final String[] monadics) {
    * @throws IOException should not throw
    */
   public byte[] serialize(int msgType,Object x,boolean zip)throws IOException{
-    int length=8+nx(x);
     synchronized(outStream){
-      wBuff=new byte[length];
-      wBuff[0]=0;
-      wBuff[1]=(byte)msgType;
-      wBuffPos=4;
-      w(length);
-      w(x);
-      if(zip&&wBuffPos>2000&&!isLoopback)
-        compress();
+      serialize(msgType,x,zip,false);
       return wBuff;
     }
   }
+  /**
+   * Serialises {@code x} into {@code wBuff}.
+   * @param pooled true to use the reused buffers, in which case wBuff may be longer than the message.
+   * @return The length of the message in bytes
+   */
+  private int serialize(int msgType,Object x,boolean zip,boolean pooled)throws IOException{
+    int length=8+nx(x);
+    if(pooled&&reusable(length)){
+      wBuff=writeBuff=grow(writeBuff,length);
+    }else{
+      wBuff=new byte[length];
+      pooled=false;
+    }
+    wBuff[0]=0;
+    wBuff[1]=(byte)msgType;
+    wBuff[2]=0;
+    wBuff[3]=0;
+    wBuffPos=4;
+    w(length);
+    w(x);
+    if(zip&&wBuffPos>2000&&!isLoopback)
+      compress(pooled);
+    return wBuffPos;
+  }
 
   /**
    * Deserialises {@code buffer} q ipc as an object
@@ -1483,8 +1567,8 @@ private static char[][] toChars(final String[] monadics) {
    */
   protected void w(int msgType,Object x) throws IOException{
     synchronized(outStream){
-      byte[] buffer=serialize(msgType,x,zip);
-      outStream.write(buffer,0,buffer.length);
+      int n=serialize(msgType,x,zip,true);
+      outStream.write(wBuff,0,n);
     }
   }
   /**
@@ -1509,14 +1593,16 @@ private static char[][] toChars(final String[] monadics) {
     sync--;
     int n=2+ns(text)+8;
     synchronized(outStream){
-      wBuff=new byte[n];
+      wBuff=reusable(n)?(writeBuff=grow(writeBuff,n)):new byte[n];
       wBuff[0]=0;
       wBuff[1]=2;
+      wBuff[2]=0;
+      wBuff[3]=0;
       wBuffPos=4;
       w(n);
       w((byte)-128);
       w(text);
-      outStream.write(wBuff);
+      outStream.write(wBuff,0,n);
     }
   }
   /**
@@ -1590,15 +1676,18 @@ private static char[][] toChars(final String[] monadics) {
    */
   public Object[] readMsg() throws KException,IOException,UnsupportedEncodingException{
     synchronized(inStream){
-      rBuff=new byte[8];
-      inStream.readFully(rBuff); // read the msg header
+      rBuff=msgHeader;
+      inStream.readFully(rBuff,0,8); // read the msg header
       isLittleEndian=rBuff[0]==1;  // endianness of the msg
-      if(rBuff[1]==1) // msg types are 0 - async, 1 - sync, 2 - response
+      byte msgType=rBuff[1];
+      if(msgType==1) // msg types are 0 - async, 1 - sync, 2 - response
         sync++;   // an incoming sync message means the remote will expect a response message
       rBuffPos=4;
-      rBuff=Arrays.copyOf(rBuff,ri());
-      inStream.readFully(rBuff,8,rBuff.length-8); // read the incoming message in full
-      return new Object[]{rBuff[1],deserialize(rBuff)};
+      int length=ri();
+      byte[] msg=reusable(length)?(readBuff=grow(readBuff,length)):new byte[length];
+      System.arraycopy(msgHeader,0,msg,0,8);
+      inStream.readFully(msg,8,length-8); // read the incoming message in full
+      return new Object[]{msgType,deserialize(msg)};
     }
   }
   /**
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Preconditions;
+
+import lombok.Data;
+import lombok.Getter;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Tracks how long each {@link Queryable} takes to run as an exponentially weighted moving average and
+ * stretches its refresh period so that it keeps its database busy for at most a share of the time.
+ * A query taking 3 seconds set to refresh every second is then ran every 6 seconds with a share of 0.5,
+ * rather than again as soon as it finishes.
+ */
+@ThreadSafe
+class AdaptiveRefresh {
+
+	/** Weight of the latest run in the average, higher reacts faster to a change in cost. */
+	private static final double ALPHA = 0.3;
+	/** The effective period is only reported again once it changes by more than this fraction. */
+	private static final double REPORT_CHANGE = 0.2;
+	
+	private final Map<Queryable, Cost> costs = new ConcurrentHashMap<>();
+	@Getter private volatile double maxShare = 0.5;
+
+	/** Cost of one queryable, synchronized on itself. */
+	private static class Cost {
+		private long lastStart;
+		private double avgMillis = -1;
+		private long reportedPeriod;
+	}
+
+	/** The refresh period a queryable actually runs at, reported when it differs from the one requested. */
+	@Data
+	static class Rate {
+		private final long period;
+		private final long avgQueryMillis;
+	}
+
+	/** @param maxShare The most of its refresh period a query may spend running, 0 to never stretch the period. */
+	void setMaxShare(double maxShare) {
+		Preconditions.checkArgument(maxShare >= 0, "maxShare must be >=0");
+		this.maxShare = maxShare;
+	}
+
+	/**
+	 * @param refreshPeriod Milliseconds between runs that was requested.
+	 * @return Milliseconds until the queryable is due, once its effective refresh period passed since its last run started.
+	 */
+	long getDelay(Queryable q, long refreshPeriod, long now) {
+		Cost c = costs.get(q);
+		if(c == null) {
+			return refreshPeriod;
+		}
+		synchronized (c) {
+			return Math.max(0, c.lastStart + effectivePeriod(c, refreshPeriod) - now);
+		}
+	}
+
+	/**
+	 * @param refreshPeriod Milliseconds between runs that was requested.
+	 * @return Milliseconds between runs once stretched for the queryable's cost.
+	 */
+	long getPeriod(Queryable q, long refreshPeriod) {
+		Cost c = costs.get(q);
+		if(c == null) {
+			return refreshPeriod;
+		}
+		synchronized (c) {
+			return effectivePeriod(c, refreshPeriod);
+		}
+	}
+
+	void started(Queryable q, long now) {
+		Cost c = costs.computeIfAbsent(q, k -> new Cost());
+		synchronized (c) {
+			c.lastStart = now;
+		}
+	}
+
+	/**
+	 * Record how long a run took, including runs cancelled at their deadline as the query costs at least that much.
+	 * @return The new rate if the effective period changed enough to tell the client, otherwise null.
+	 */
+	Rate finished(Queryable q, long elapsedMillis) {
+		Cost c = costs.computeIfAbsent(q, k -> new Cost());
+		long period = Math.max(0, q.getRefreshPeriod());
+		synchronized (c) {
+			c.avgMillis = c.avgMillis < 0 ? elapsedMillis : ALPHA * elapsedMillis + (1 - ALPHA) * c.avgMillis;
+			long effective = effectivePeriod(c, period);
+			long reported = c.reportedPeriod == 0 ? period : c.reportedPeriod;
+			boolean changed = Math.abs(effective - reported) > REPORT_CHANGE * Math.max(reported, 1) 
+					|| (effective == period && reported != period);
+			if(!changed) {
+				return null;
+			}
+			c.reportedPeriod = effective;
+			return new Rate(effective, Math.round(c.avgMillis));
+		}
+	}
+	
+	private long effectivePeriod(Cost c, long refreshPeriod) {
+		double share = maxShare;
+		if(share <= 0 || c.avgMillis < 0) {
+			return refreshPeriod;
+		}
+		return Math.max(refreshPeriod, (long) (c.avgMillis / share));
+	}
+
+	void remove(Queryable q) { costs.remove(q); }
+
+	/** Forget the cost of all queryables except these. */
+	void retain(Collection<Queryable> queryables) { costs.keySet().retainAll(queryables); }
+	
+	void clear() { costs.clear(); }
+}
@@ -0,0 +1,571 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+
+/**
+ * A read-only, scrollable, in-memory copy of a {@link ResultSet} stored by column rather than by row.
+ * A {@link CachedRowSet} holds every cell as a boxed Object in an array per row, here integer and floating point 
+ * columns are held in primitive arrays, strings are dictionary encoded and nulls are bitmaps, 
+ * so large results use a fraction of the heap and create far fewer objects for the garbage collector.
+ * <p>
+ * The storage of each column is decided by the class of its first non-null value, so that getObject
+ * returns the same classes as the source ResultSet. Later rows are then read using the primitive getters.
+ * Columns of any other class are held as Objects.
+ * The data is never modified once populated so {@link #createShared()} can give each consumer their own cursor.
+ */
+public class ColumnarResultSet extends BaseResultSet implements ShareableResultSet {
+
+	private final ResultSetMetaData metaData;
+	private final String[] labels;
+	private final Column[] columns;
+	private final int rowCount;
+	/** Current row, 1-based as in JDBC so 0 is before the first row and rowCount+1 is after the last. */
+	private int row = 0;
+	private boolean wasNull = false;
+	private boolean closed = false;
+
+	private ColumnarResultSet(ResultSetMetaData metaData, String[] labels, Column[] columns, int rowCount) {
+		this.metaData = metaData;
+		this.labels = labels;
+		this.columns = columns;
+		this.rowCount = rowCount;
+	}
+
+	/** Copy all remaining rows of rs, which is left after the last row but not closed. */
+	public static ColumnarResultSet populate(ResultSet rs) throws SQLException {
+		return populate(rs, Integer.MAX_VALUE);
+	}
+
+	/** Copy up to maxRows remaining rows of rs. */
+	public static ColumnarResultSet populate(ResultSet rs, int maxRows) throws SQLException {
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int cols = rsmd.getColumnCount();
+		String[] labels = new String[cols];
+		ColumnBuilder[] builders = new ColumnBuilder[cols];
+		for(int c = 0; c < cols; c++) {
+			labels[c] = rsmd.getColumnLabel(c + 1);
+			builders[c] = new ColumnBuilder();
+		}
+		int rows = 0;
+		while(rows < maxRows && rs.next()) {
+			for(int c = 0; c < cols; c++) {
+				builders[c].add(rs, c + 1);
+			}
+			rows++;
+		}
+		Column[] columns = new Column[cols];
+		for(int c = 0; c < cols; c++) {
+			columns[c] = builders[c].build();
+		}
+		return new ColumnarResultSet(copyOf(rsmd), labels, columns, rows);
+	}
+
+	@Override public ColumnarResultSet createShared() {
+		return new ColumnarResultSet(metaData, labels, columns, rowCount);
+	}
+	
+	/** Same as CachedRowSet, metadata is copied as the source may be unusable once closed. */
+	private static ResultSetMetaData copyOf(ResultSetMetaData rsmd) throws SQLException {
+		int cols = rsmd.getColumnCount();
+		RowSetMetaDataImpl md = new RowSetMetaDataImpl();
+		md.setColumnCount(cols);
+		for(int c = 1; c <= cols; c++) {
+			md.setColumnName(c, rsmd.getColumnName(c));
+			md.setColumnLabel(c, rsmd.getColumnLabel(c));
+			md.setColumnType(c, rsmd.getColumnType(c));
+			try {
+				md.setColumnTypeName(c, rsmd.getColumnTypeName(c));
+				md.setNullable(c, rsmd.isNullable(c));
+				md.setPrecision(c, Math.max(0, rsmd.getPrecision(c)));
+				md.setScale(c, Math.max(0, rsmd.getScale(c)));
+				md.setTableName(c, rsmd.getTableName(c));
+			} catch(SQLException | RuntimeException e) {
+				// Optional details, not all drivers support them.
+			}
+		}
+		return md;
+	}
+
+
+	/******************** Column Storage ********************/
+	
+	private static abstract class Column {
+		final BitSet nulls;
+		Column(BitSet nulls) { this.nulls = nulls; }
+		
+		abstract Object get(int r);
+		
+		long getLong(int r) {
+			Object o = get(r);
+			if(o instanceof Number) {
+				return ((Number) o).longValue();
+			} else if(o instanceof Boolean) {
+				return ((Boolean) o) ? 1 : 0;
+			}
+			return Long.parseLong(o.toString().trim());
+		}
+		
+		double getDouble(int r) {
+			Object o = get(r);
+			return o instanceof Number ? ((Number) o).doubleValue() : Double.parseDouble(o.toString().trim());
+		}
+		
+		boolean getBoolean(int r) {
+			Object o = get(r);
+			if(o instanceof Boolean) {
+				return (Boolean) o;
+			}
+			return o instanceof Number ? ((Number) o).doubleValue() != 0 : Boolean.parseBoolean(o.toString().trim());
+		}
+		
+		String getString(int r) { return get(r).toString(); }
+	}
+
+	/** TINYINT to BIGINT, kept as long and boxed back to their original class when requested as an Object. */
+	private static class LongColumn extends Column {
+		private final long[] vals;
+		private final Class<?> boxClass;
+		LongColumn(long[] vals, BitSet nulls, Class<?> boxClass) { super(nulls); this.vals = vals; this.boxClass = boxClass; }
+		
+		@Override Object get(int r) {
+			long l = vals[r];
+			if(boxClass == Integer.class) {
+				return (int) l;
+			} else if(boxClass == Short.class) {
+				return (short) l;
+			} else if(boxClass == Byte.class) {
+				return (byte) l;
+			}
+			return l;
+		}
+		@Override long getLong(int r) { return vals[r]; }
+		@Override double getDouble(int r) { return vals[r]; }
+		@Override boolean getBoolean(int r) { return vals[r] != 0; }
+		@Override String getString(int r) { return Long.toString(vals[r]); }
+	}
+
+	private static class DoubleColumn extends Column {
+		private final double[] vals;
+		private final boolean isFloat;
+		DoubleColumn(double[] vals, BitSet nulls, boolean isFloat) { super(nulls); this.vals = vals; this.isFloat = isFloat; }
+		
+		@Override Object get(int r) { return isFloat ? (Object) (float) vals[r] : (Object) vals[r]; }
+		@Override long getLong(int r) { return (long) vals[r]; }
+		@Override double getDouble(int r) { return vals[r]; }
+		@Override boolean getBoolean(int r) { return vals[r] != 0; }
+	}
+
+	private static class BooleanColumn extends Column {
+		private final BitSet vals;
+		BooleanColumn(BitSet vals, BitSet nulls) { super(nulls); this.vals = vals; }
+		
+		@Override Object get(int r) { return vals.get(r); }
+		@Override boolean getBoolean(int r) { return vals.get(r); }
+	}
+
+	/** Strings are stored as a code per row into a dictionary of distinct values. */
+	private static class StringColumn extends Column {
+		private final int[] codes;
+		private final String[] dict;
+		StringColumn(int[] codes, String[] dict, BitSet nulls) { super(nulls); this.codes = codes; this.dict = dict; }
+		
+		@Override Object get(int r) { return dict[codes[r]]; }
+		@Override String getString(int r) { return dict[codes[r]]; }
+	}
+
+	/** Timestamps as epoch millis plus nanos, Date and Time as epoch millis. */
+	private static class TemporalColumn extends Column {
+		private final long[] millis;
+		private final int[] nanos;
+		private final Class<?> boxClass;
+		TemporalColumn(long[] millis, int[] nanos, BitSet nulls, Class<?> boxClass) { 
+			super(nulls); this.millis = millis; this.nanos = nanos; this.boxClass = boxClass; 
+		}
+		
+		@Override Object get(int r) {
+			if(boxClass == Timestamp.class) {
+				Timestamp t = new Timestamp(millis[r]);
+				t.setNanos(nanos[r]);
+				return t;
+			}
+			return boxClass == Time.class ? new Time(millis[r]) : new Date(millis[r]);
+		}
+		@Override long getLong(int r) { return millis[r]; }
+		@Override double getDouble(int r) { return millis[r]; }
+	}
+
+	private static class ObjectColumn extends Column {
+		private final Object[] vals;
+		ObjectColumn(Object[] vals, BitSet nulls) { super(nulls); this.vals = vals; }
+		
+		@Override Object get(int r) { return vals == null ? null : vals[r]; }
+	}
+
+	private static enum Kind { LONG, DOUBLE, BOOLEAN, STRING, TIMESTAMP, DATE, TIME, OBJECT }
+	
+	/** Accumulates one column, the storage is chosen once the first non-null value is seen. */
+	private static class ColumnBuilder {
+		private Kind kind = null;
+		private Class<?> boxClass = null;
+		private int size = 0;
+		private final BitSet nulls = new BitSet();
+		private long[] longs;
+		private int[] ints;
+		private double[] doubles;
+		private BitSet bools;
+		private Object[] objects;
+		private Map<String,Integer> dict;
+		private List<String> dictVals;
+		
+		void add(ResultSet rs, int c) throws SQLException {
+			if(kind == null) {
+				Object o = rs.getObject(c);
+				if(o == null) {
+					nulls.set(size++);
+				} else {
+					start(o);
+					set(o);
+					size++;
+				}
+				return;
+			}
+			switch(kind) {
+			case LONG:
+				// Use the getter matching the original class as simpler ResultSets only cast getObject.
+				long l = boxClass == Long.class ? rs.getLong(c) : boxClass == Integer.class ? rs.getInt(c)
+						: boxClass == Short.class ? rs.getShort(c) : rs.getByte(c);
+				if(rs.wasNull()) { nulls.set(size); } else { longs = grow(longs); longs[size] = l; }
+				break;
+			case DOUBLE:
+				double d = boxClass == Double.class ? rs.getDouble(c) : rs.getFloat(c);
+				if(rs.wasNull()) { nulls.set(size); } else { doubles = grow(doubles); doubles[size] = d; }
+				break;
+			case BOOLEAN:
+				boolean b = rs.getBoolean(c);
+				if(rs.wasNull()) { nulls.set(size); } else { bools.set(size, b); }
+				break;
+			case STRING:
+				String s = rs.getString(c);
+				if(s == null) { nulls.set(size); } else { set(s); }
+				break;
+			case TIMESTAMP:
+				Timestamp ts = rs.getTimestamp(c);
+				if(ts == null) { nulls.set(size); } else { set(ts); }
+				break;
+			case DATE:
+				Date dt = rs.getDate(c);
+				if(dt == null) { nulls.set(size); } else { set(dt); }
+				break;
+			case TIME:
+				Time tm = rs.getTime(c);
+				if(tm == null) { nulls.set(size); } else { set(tm); }
+				break;
+			default:
+				Object o = rs.getObject(c);
+				if(o == null) { nulls.set(size); } else { set(o); }
+			}
+			size++;
+		}
+		
+		private void start(Object o) {
+			boxClass = o.getClass();
+			if(boxClass == Long.class || boxClass == Integer.class || boxClass == Short.class || boxClass == Byte.class) {
+				kind = Kind.LONG;
+				longs = new long[Math.max(64, size * 2)];
+			} else if(boxClass == Double.class || boxClass == Float.class) {
+				kind = Kind.DOUBLE;
+				doubles = new double[Math.max(64, size * 2)];
+			} else if(boxClass == Boolean.class) {
+				kind = Kind.BOOLEAN;
+				bools = new BitSet();
+			} else if(boxClass == String.class) {
+				kind = Kind.STRING;
+				ints = new int[Math.max(64, size * 2)];
+				dict = new HashMap<>();
+				dictVals = new ArrayList<>();
+			} else if(boxClass == Timestamp.class || boxClass == Date.class || boxClass == Time.class) {
+				kind = boxClass == Timestamp.class ? Kind.TIMESTAMP : boxClass == Date.class ? Kind.DATE : Kind.TIME;
+				longs = new long[Math.max(64, size * 2)];
+				if(kind == Kind.TIMESTAMP) {
+					ints = new int[longs.length];
+				}
+			} else {
+				kind = Kind.OBJECT;
+				objects = new Object[Math.max(64, size * 2)];
+			}
+		}
+		
+		/** Store non-null value o at the current position. */
+		private void set(Object o) {
+			switch(kind) {
+			case LONG: longs = grow(longs); longs[size] = ((Number) o).longValue(); break;
+			case DOUBLE: doubles = grow(doubles); doubles[size] = ((Number) o).doubleValue(); break;
+			case BOOLEAN: bools.set(size, (Boolean) o); break;
+			case STRING:
+				String s = (String) o;
+				Integer code = dict.get(s);
+				if(code == null) {
+					code = dictVals.size();
+					dict.put(s, code);
+					dictVals.add(s);
+				}
+				ints = grow(ints);
+				ints[size] = code;
+				break;
+			case TIMESTAMP: 
+				longs = grow(longs); 
+				ints = grow(ints);
+				longs[size] = ((Timestamp) o).getTime(); 
+				ints[size] = ((Timestamp) o).getNanos(); 
+				break;
+			case DATE:
+			case TIME: longs = grow(longs); longs[size] = ((java.util.Date) o).getTime(); break;
+			default: objects = grow(objects); objects[size] = o;
+			}
+		}
+
+		// Null rows only set a bit, so after a run of nulls size can be far past the array end.
+		private int newLength(int length) { return Math.max(size + 1, length * 2); }
+		private long[] grow(long[] a) { return size < a.length ? a : Arrays.copyOf(a, newLength(a.length)); }
+		private int[] grow(int[] a) { return size < a.length ? a : Arrays.copyOf(a, newLength(a.length)); }
+		private double[] grow(double[] a) { return size < a.length ? a : Arrays.copyOf(a, newLength(a.length)); }
+		private Object[] grow(Object[] a) { return size < a.length ? a : Arrays.copyOf(a, newLength(a.length)); }
+		
+		Column build() {
+			if(kind == null) {
+				return new ObjectColumn(null, nulls); // every value null
+			}
+			switch(kind) {
+			case LONG: return new LongColumn(Arrays.copyOf(longs, size), nulls, boxClass);
+			case DOUBLE: return new DoubleColumn(Arrays.copyOf(doubles, size), nulls, boxClass == Float.class);
+			case BOOLEAN: return new BooleanColumn(bools, nulls);
+			case STRING: return new StringColumn(Arrays.copyOf(ints, size), dictVals.toArray(new String[0]), nulls);
+			case TIMESTAMP: return new TemporalColumn(Arrays.copyOf(longs, size), Arrays.copyOf(ints, size), nulls, boxClass);
+			case DATE:
+			case TIME: return new TemporalColumn(Arrays.copyOf(longs, size), null, nulls, boxClass);
+			default: return new ObjectColumn(Arrays.copyOf(objects, size), nulls);
+			}
+		}
+	}
+
+
+	/******************** Value Access ********************/
+	
+	/** @return The column at columnIndex after checking the cursor is on a row and setting wasNull. */
+	private Column col(int columnIndex) throws SQLException {
+		if(row < 1 || row > rowCount) {
+			throw new SQLException("Cursor is not on a row.");
+		}
+		if(columnIndex < 1 || columnIndex > columns.length) {
+			throw new SQLException("Invalid column index: " + columnIndex);
+		}
+		Column c = columns[columnIndex - 1];
+		wasNull = c.nulls.get(row - 1);
+		return c;
+	}
+	
+	@Override public Object getObject(int columnIndex) throws SQLException {
+		Column c = col(columnIndex);
+		return wasNull ? null : c.get(row - 1);
+	}
+
+	@Override public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException { return getObject(columnIndex); }
+
+	@Override public long getLong(int columnIndex) throws SQLException {
+		Column c = col(columnIndex);
+		try {
+			return wasNull ? 0 : c.getLong(row - 1);
+		} catch(RuntimeException e) {
+			throw new SQLException("Cannot convert to long", e);
+		}
+	}
+
+	@Override public int getInt(int columnIndex) throws SQLException { return (int) getLong(columnIndex); }
+	@Override public short getShort(int columnIndex) throws SQLException { return (short) getLong(columnIndex); }
+	@Override public byte getByte(int columnIndex) throws SQLException { return (byte) getLong(columnIndex); }
+
+	@Override public double getDouble(int columnIndex) throws SQLException {
+		Column c = col(columnIndex);
+		try {
+			return wasNull ? 0 : c.getDouble(row - 1);
+		} catch(RuntimeException e) {
+			throw new SQLException("Cannot convert to double", e);
+		}
+	}
+
+	@Override public float getFloat(int columnIndex) throws SQLException { return (float) getDouble(columnIndex); }
+
+	@Override public boolean getBoolean(int columnIndex) throws SQLException {
+		Column c = col(columnIndex);
+		return wasNull ? false : c.getBoolean(row - 1);
+	}
+
+	@Override public String getString(int columnIndex) throws SQLException {
+		Column c = col(columnIndex);
+		return wasNull ? null : c.getString(row - 1);
+	}
+
+	@Override public String getNString(int columnIndex) throws SQLException { return getString(columnIndex); }
+
+	@Override public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+		Object o = getObject(columnIndex);
+		if(o == null || o instanceof BigDecimal) {
+			return (BigDecimal) o;
+		} else if(o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte) {
+			return BigDecimal.valueOf(((Number) o).longValue());
+		} else if(o instanceof Number) {
+			return BigDecimal.valueOf(((Number) o).doubleValue());
+		}
+		try {
+			return new BigDecimal(o.toString().trim());
+		} catch(NumberFormatException e) {
+			throw new SQLException("Cannot convert to BigDecimal", e);
+		}
+	}
+
+	@Override public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException { return getBigDecimal(columnIndex); }
+
+	@Override public Timestamp getTimestamp(int columnIndex) throws SQLException {
+		Object o = getObject(columnIndex);
+		if(o == null || o instanceof Timestamp) {
+			return (Timestamp) o;
+		} else if(o instanceof java.util.Date) {
+			return new Timestamp(((java.util.Date) o).getTime());
+		} else if(o instanceof LocalDateTime) {
+			return Timestamp.valueOf((LocalDateTime) o);
+		} else if(o instanceof LocalDate) {
+			return Timestamp.valueOf(((LocalDate) o).atStartOfDay());
+		}
+		throw new SQLException("Cannot convert " + o.getClass().getSimpleName() + " to Timestamp");
+	}
+
+	@Override public Date getDate(int columnIndex) throws SQLException {
+		Object o = getObject(columnIndex);
+		if(o == null || o instanceof Date) {
+			return (Date) o;
+		} else if(o instanceof java.util.Date) {
+			return new Date(((java.util.Date) o).getTime());
+		} else if(o instanceof LocalDate) {
+			return Date.valueOf((LocalDate) o);
+		} else if(o instanceof LocalDateTime) {
+			return Date.valueOf(((LocalDateTime) o).toLocalDate());
+		}
+		throw new SQLException("Cannot convert " + o.getClass().getSimpleName() + " to Date");
+	}
+
+	@Override public Time getTime(int columnIndex) throws SQLException {
+		Object o = getObject(columnIndex);
+		if(o == null || o instanceof Time) {
+			return (Time) o;
+		} else if(o instanceof java.util.Date) {
+			return new Time(((java.util.Date) o).getTime());
+		} else if(o instanceof LocalTime) {
+			return Time.valueOf((LocalTime) o);
+		}
+		throw new SQLException("Cannot convert " + o.getClass().getSimpleName() + " to Time");
+	}
+
+	@Override public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException { return getTimestamp(columnIndex); }
+	@Override public Date getDate(int columnIndex, Calendar cal) throws SQLException { return getDate(columnIndex); }
+	@Override public Time getTime(int columnIndex, Calendar cal) throws SQLException { return getTime(columnIndex); }
+
+	@Override public boolean wasNull() throws SQLException { return wasNull; }
+
+	@Override public int findColumn(String columnLabel) throws SQLException {
+		for(int i = 0; i < labels.length; i++) {
+			if(labels[i].equalsIgnoreCase(columnLabel)) {
+				return i + 1;
+			}
+		}
+		throw new SQLException("Column not found: " + columnLabel);
+	}
+
+	@Override public ResultSetMetaData getMetaData() throws SQLException { return metaData; }
+
+
+	/******************** Cursor ********************/
+
+	private boolean moveTo(int r) {
+		row = Math.max(0, Math.min(rowCount + 1, r));
+		return row >= 1 && row <= rowCount;
+	}
+
+	@Override public boolean next() throws SQLException { return moveTo(row + 1); }
+	@Override public boolean previous() throws SQLException { return moveTo(row - 1); }
+	@Override public boolean first() throws SQLException { return moveTo(1); }
+	@Override public boolean last() throws SQLException { return moveTo(rowCount); }
+	@Override public void beforeFirst() throws SQLException { row = 0; }
+	@Override public void afterLast() throws SQLException { row = rowCount + 1; }
+	@Override public boolean absolute(int r) throws SQLException { return moveTo(r >= 0 ? r : rowCount + 1 + r); }
+	@Override public boolean relative(int rows) throws SQLException { return moveTo(row + rows); }
+	@Override public int getRow() throws SQLException { return row >= 1 && row <= rowCount ? row : 0; }
+	@Override public boolean isBeforeFirst() throws SQLException { return row == 0 && rowCount > 0; }
+	@Override public boolean isAfterLast() throws SQLException { return row > rowCount && rowCount > 0; }
+	@Override public boolean isFirst() throws SQLException { return row == 1 && rowCount > 0; }
+	@Override public boolean isLast() throws SQLException { return row == rowCount && rowCount > 0; }
+
+	@Override public int getType() throws SQLException { return ResultSet.TYPE_SCROLL_INSENSITIVE; }
+	@Override public int getConcurrency() throws SQLException { return ResultSet.CONCUR_READ_ONLY; }
+	@Override public int getFetchDirection() throws SQLException { return ResultSet.FETCH_FORWARD; }
+	@Override public void setFetchDirection(int direction) throws SQLException { }
+	@Override public int getFetchSize() throws SQLException { return 0; }
+	@Override public void setFetchSize(int rows) throws SQLException { }
+	@Override public int getHoldability() throws SQLException { return ResultSet.HOLD_CURSORS_OVER_COMMIT; }
+	@Override public void clearWarnings() throws SQLException { }
+	@Override public boolean isClosed() throws SQLException { return closed; }
+	/** Only this cursor is closed, the rows remain available to shared copies. */
+	@Override public void close() throws SQLException { closed = true; }
+	
+	@Override public boolean isWrapperFor(Class<?> iface) throws SQLException { return iface.isInstance(this); }
+	@Override public <T> T unwrap(Class<T> iface) throws SQLException {
+		if(iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("Not a wrapper for " + iface);
+	}
+}
@@ -26,13 +26,21 @@
  
 package com.sqldashboards.dashy;
 
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.UUID;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.kx.c;
+
 
 /**
  * DataBase helper methods. 
@@ -97,6 +105,164 @@ public class DBHelper {
 		return false;
 	}
 
+	private static final long PRIME = 0x9E3779B97F4A7C15L;
+	private static final long NULL_HASH = 0x5DEECE66DL;
+	
+	/**
+	 * Calculate a 64-bit fingerprint of the column names, types and every value in one pass.
+	 * Two results with the same fingerprint are almost certainly equal, this allows change detection 
+	 * by storing and comparing a single long rather than keeping and walking the previous result.
+	 * Not suitable for anything security related.
+	 */
+	public static long fingerprint(ResultSet rs) throws SQLException {
+		ResultSetMetaData md = rs.getMetaData();
+		int cols = md.getColumnCount();
+		int[] types = new int[cols];
+		long h = mix(PRIME, cols);
+		for(int c=1; c<=cols; c++) {
+			types[c-1] = md.getColumnType(c);
+			h = mix(h, hash(md.getColumnName(c)));
+			h = mix(h, types[c-1]);
+		}
+		rs.beforeFirst();
+		long rows = 0;
+		while(rs.next()) {
+			rows++;
+			h = mix(h, hashRow(rs, types));
+		}
+		rs.beforeFirst();
+		return fmix(mix(h, rows));
+	}
+	
+	/**
+	 * @param types The java.sql.Types of each column as reported by the metadata.
+	 * @return A 64-bit hash of all values in the current row.
+	 */
+	public static long hashRow(ResultSet rs, int[] types) throws SQLException {
+		long h = PRIME;
+		for(int c=1; c<=types.length; c++) {
+			long v;
+			switch(types[c-1]) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+				v = rs.getLong(c);
+				break;
+			case Types.FLOAT:
+			case Types.REAL:
+			case Types.DOUBLE:
+				v = Double.doubleToLongBits(rs.getDouble(c));
+				break;
+			case Types.CHAR:
+			case Types.NCHAR:
+			case Types.VARCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.LONGNVARCHAR:
+				v = hash(rs.getString(c));
+				break;
+			default:
+				v = hash(rs.getObject(c));
+			}
+			h = mix(h, rs.wasNull() ? NULL_HASH : v);
+		}
+		return h;
+	}
+	
+	private static long mix(long h, long v) {
+		return Long.rotateLeft(h ^ (v * PRIME), 27) * 5 + 0x52DCE729L;
+	}
+	
+	/** Final avalanche step from MurmurHash3 so that small input changes flip around half the bits. */
+	private static long fmix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	/** Hash 4 chars at a time through {@link #mix(long, long)} so that swapped or offset chars don't cancel out. */
+	private static long hash(String s) {
+		if(s == null) {
+			return NULL_HASH;
+		}
+		int n = s.length();
+		long h = mix(PRIME, n);
+		int i = 0;
+		for(; i+4<=n; i+=4) {
+			long block = s.charAt(i) | ((long)s.charAt(i+1) << 16) | ((long)s.charAt(i+2) << 32) | ((long)s.charAt(i+3) << 48);
+			h = mix(h, block);
+		}
+		long tail = 0;
+		for(; i<n; i++) {
+			tail = (tail << 16) | s.charAt(i);
+		}
+		return fmix(mix(h, tail));
+	}
+	
+	/** 
+	 * Hash of the value rather than {@link Object#hashCode()} where that's only 32 bits or ignores
+	 * part of the value, e.g. Timestamp ignores nanos and BigDecimal 1.0 and 0.1 often collide. 
+	 */
+	static long hash(Object o) {
+		if(o == null) {
+			return NULL_HASH;
+		} else if(o instanceof String) {
+			return hash((String) o);
+		} else if(o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte) {
+			return ((Number) o).longValue();
+		} else if(o instanceof Double || o instanceof Float) {
+			return Double.doubleToLongBits(((Number) o).doubleValue());
+		} else if(o instanceof Timestamp) {
+			return mix(((Timestamp) o).getTime(), ((Timestamp) o).getNanos());
+		} else if(o instanceof java.util.Date) {
+			return ((java.util.Date) o).getTime();
+		} else if(o instanceof BigDecimal) {
+			return mix(hash(((BigDecimal) o).unscaledValue()), ((BigDecimal) o).scale());
+		} else if(o instanceof BigInteger) {
+			BigInteger bi = (BigInteger) o;
+			return bi.bitLength() < 64 ? bi.longValue() : hash(bi.toByteArray());
+		} else if(o instanceof UUID) {
+			return mix(((UUID) o).getMostSignificantBits(), ((UUID) o).getLeastSignificantBits());
+		} else if(o instanceof c.Timespan) {
+			return ((c.Timespan) o).j;
+		} else if(o instanceof char[]) {
+			return hash(new String((char[]) o));
+		} else if(o instanceof Object[]) {
+			Object[] a = (Object[]) o;
+			long h = mix(PRIME, a.length);
+			for(Object e : a) {
+				h = mix(h, hash(e));
+			}
+			return fmix(h);
+		} else if(o instanceof long[]) {
+			long[] a = (long[]) o;
+			long h = mix(PRIME, a.length);
+			for(long e : a) {
+				h = mix(h, e);
+			}
+			return fmix(h);
+		} else if(o instanceof double[]) {
+			double[] a = (double[]) o;
+			long h = mix(PRIME, a.length);
+			for(double e : a) {
+				h = mix(h, Double.doubleToLongBits(e));
+			}
+			return fmix(h);
+		} else if(o.getClass().isArray()) {
+			int n = Array.getLength(o);
+			long h = mix(PRIME, n);
+			for(int i=0; i<n; i++) {
+				h = mix(h, hash(Array.get(o, i)));
+			}
+			return fmix(h);
+		}
+		return mix(o.hashCode(), hash(o.toString()));
+	}
+
 	final public static String toString(ResultSet rs, boolean withTypesInHeader) throws SQLException {
 		StringBuilder sb = new StringBuilder();
 		ResultSetMetaData rsmd = rs.getMetaData();
@@ -45,6 +45,8 @@ public class EngineResult implements QueryResultI {
 	private final QueryResultI qr;
 	private final ResultSet rs;
 	private final Exception e;
+	/** Set when rs is a cursor over a result shared with other sessions, null otherwise. */
+	private SharedQueryCache.CachedResult sharedResult;
 	
 	@Override public Exception getE() {
 		Exception myE = this.e;
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.kx.c;
+
+/**
+ * Functions for combining kdb tables column by column, without boxing the values of non-key columns.
+ * A {@link c.Flip} is treated as immutable, every function returns a new table when it changes anything.
+ */
+public class FlipHelper {
+
+	private FlipHelper() {}
+	
+	/** @return The number of rows in the table. */
+	public static int count(c.Flip tbl) {
+		return tbl.y.length == 0 ? 0 : Array.getLength(tbl.y[0]);
+	}
+	
+	/** @return true if both tables have the same column names and column array types in the same order. */
+	public static boolean sameSchema(c.Flip a, c.Flip b) {
+		if(!Arrays.equals(a.x, b.x)) {
+			return false;
+		}
+		for(int i=0; i<a.y.length; i++) {
+			if(a.y[i].getClass() != b.y[i].getClass()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return A table containing the rows of a followed by the rows of b.
+	 * @throws IllegalArgumentException if the tables do not have the {@link #sameSchema(c.Flip, c.Flip)}.
+	 */
+	public static c.Flip append(c.Flip a, c.Flip b) {
+		if(!sameSchema(a, b)) {
+			throw new IllegalArgumentException("Cannot append tables with different columns");
+		}
+		int an = count(a);
+		int bn = count(b);
+		Object[] y = new Object[a.y.length];
+		for(int i=0; i<y.length; i++) {
+			y[i] = Array.newInstance(a.y[i].getClass().getComponentType(), an + bn);
+			System.arraycopy(a.y[i], 0, y[i], 0, an);
+			System.arraycopy(b.y[i], 0, y[i], an, bn);
+		}
+		return flip(a.x, y);
+	}
+	
+	/**
+	 * @return A table containing the rows of every table in order, copying each row once.
+	 * @throws IllegalArgumentException if the tables do not all have the {@link #sameSchema(c.Flip, c.Flip)}.
+	 */
+	public static c.Flip concat(Collection<c.Flip> tbls) {
+		Iterator<c.Flip> it = tbls.iterator();
+		c.Flip first = it.next();
+		if(!it.hasNext()) {
+			return first;
+		}
+		int total = 0;
+		for(c.Flip t : tbls) {
+			if(!sameSchema(first, t)) {
+				throw new IllegalArgumentException("Cannot append tables with different columns");
+			}
+			total += count(t);
+		}
+		Object[] y = new Object[first.y.length];
+		for(int i=0; i<y.length; i++) {
+			y[i] = Array.newInstance(first.y[i].getClass().getComponentType(), total);
+		}
+		int offset = 0;
+		for(c.Flip t : tbls) {
+			int n = count(t);
+			for(int i=0; i<y.length; i++) {
+				System.arraycopy(t.y[i], 0, y[i], offset, n);
+			}
+			offset += n;
+		}
+		return flip(first.x, y);
+	}
+	
+	/** @return A table of only the selected rows, in the order given. */
+	public static c.Flip select(c.Flip tbl, int[] rows) {
+		Object[] y = new Object[tbl.y.length];
+		for(int i=0; i<y.length; i++) {
+			Object col = tbl.y[i];
+			y[i] = Array.newInstance(col.getClass().getComponentType(), rows.length);
+			for(int r=0; r<rows.length; r++) {
+				System.arraycopy(col, rows[r], y[i], r, 1);
+			}
+		}
+		return flip(tbl.x, y);
+	}
+	
+	/** @return A table of only the last n rows, or the same table if it has no more than n rows. */
+	public static c.Flip tail(c.Flip tbl, int n) {
+		int count = count(tbl);
+		if(count <= n) {
+			return tbl;
+		}
+		Object[] y = new Object[tbl.y.length];
+		for(int i=0; i<y.length; i++) {
+			y[i] = Array.newInstance(tbl.y[i].getClass().getComponentType(), n);
+			System.arraycopy(tbl.y[i], count - n, y[i], 0, n);
+		}
+		return flip(tbl.x, y);
+	}
+	
+	/** @return true if the table has every one of the named columns. */
+	public static boolean hasColumns(c.Flip tbl, String[] colNames) {
+		return Arrays.asList(tbl.x).containsAll(Arrays.asList(colNames));
+	}
+	
+	/**
+	 * @return A table with only the last row for each distinct value of the key columns, 
+	 * rows are kept in the order of those last occurrences.
+	 */
+	public static c.Flip lastByKey(c.Flip tbl, String[] keyCols) {
+		Object[] keys = new Object[keyCols.length];
+		for(int k=0; k<keyCols.length; k++) {
+			keys[k] = tbl.at(keyCols[k]);
+		}
+		int count = count(tbl);
+		Set<Object> seen = new HashSet<>();
+		int[] keep = new int[count];
+		int kept = 0;
+		for(int r=count-1; r>=0; r--) {
+			if(seen.add(key(keys, r))) {
+				keep[kept++] = r;
+			}
+		}
+		if(kept == count) {
+			return tbl;
+		}
+		int[] rows = new int[kept];
+		for(int i=0; i<kept; i++) {
+			rows[i] = keep[kept - 1 - i];
+		}
+		return select(tbl, rows);
+	}
+	
+	/** @return The key of one row, a single column's value or a list of values for compound keys. */
+	static Object key(Object[] keyCols, int row) {
+		if(keyCols.length == 1) {
+			return keyValue(keyCols[0], row);
+		}
+		List<Object> l = new ArrayList<>(keyCols.length);
+		for(Object col : keyCols) {
+			l.add(keyValue(col, row));
+		}
+		return l;
+	}
+	
+	/** kdb string columns hold char arrays which only have identity equality, so compare those as Strings. */
+	private static Object keyValue(Object col, int row) {
+		Object o = Array.get(col, row);
+		return o instanceof char[] ? new String((char[]) o) : o;
+	}
+	
+	private static c.Flip flip(String[] colNames, Object[] y) {
+		return new c.Flip(new c.Dict(colNames, y));
+	}
+}
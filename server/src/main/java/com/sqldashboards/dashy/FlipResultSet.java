@@ -0,0 +1,78 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.io.UnsupportedEncodingException;
+import java.sql.SQLException;
+
+import com.kx.c;
+
+import kx.jdbc;
+import lombok.Getter;
+
+/**
+ * A kdb table held as the {@link c.Flip} column arrays that were received, without copying.
+ * It can be read as any other ResultSet while serializers can check for this class and write the
+ * typed columns directly rather than one boxed cell at a time.
+ */
+public class FlipResultSet extends jdbc.rs implements ShareableResultSet {
+
+	@Getter private final c.Flip flip;
+	/** Number of rows visible, which may be less than the length of the columns. */
+	@Getter private final int rowCount;
+
+	public FlipResultSet(c.Flip flip, int maxRows) throws SQLException {
+		super(null, flip, maxRows);
+		this.flip = flip;
+		try {
+			this.rowCount = flip.y.length == 0 ? 0 : Math.min(maxRows, c.n(flip.y[0]));
+		} catch(UnsupportedEncodingException e) {
+			throw new SQLException(e);
+		}
+	}
+
+	@Override public FlipResultSet createShared() throws SQLException {
+		return new FlipResultSet(flip, rowCount);
+	}
+
+	// The kdb driver only casts, these convert between number types the same as CachedRowSet did.
+	
+	@Override public long getLong(int i) throws SQLException { Number n = getNumber(i); return n == null ? 0 : n.longValue(); }
+	@Override public int getInt(int i) throws SQLException { Number n = getNumber(i); return n == null ? 0 : n.intValue(); }
+	@Override public short getShort(int i) throws SQLException { Number n = getNumber(i); return n == null ? 0 : n.shortValue(); }
+	@Override public byte getByte(int i) throws SQLException { Number n = getNumber(i); return n == null ? 0 : n.byteValue(); }
+	@Override public double getDouble(int i) throws SQLException { Number n = getNumber(i); return n == null ? 0 : n.doubleValue(); }
+	@Override public float getFloat(int i) throws SQLException { Number n = getNumber(i); return n == null ? 0 : n.floatValue(); }
+
+	private Number getNumber(int i) throws SQLException {
+		Object o = getObject(i);
+		if(o == null || o instanceof Number) {
+			return (Number) o;
+		}
+		throw new SQLException("Column " + i + " is not a number");
+	}
+}
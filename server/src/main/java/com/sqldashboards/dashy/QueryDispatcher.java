@@ -0,0 +1,121 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Preconditions;
+import com.sqldashboards.shared.WorkerThreads;
+
+import lombok.Getter;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Runs queries on bounded worker pools, one pool per server name, shared by all {@link QueryEngine2}s.
+ * A slow database then only delays queries to itself rather than every chart on every dashboard.
+ * Each server has a cap on in-flight queries, once reached further queries are rejected 
+ * rather than queued so that the caller can retry on its next tick.
+ * The limit is enforced by a semaphore rather than the pool size, so that it holds whether
+ * queries run on platform or virtual threads, see {@link WorkerThreads}.
+ */
+@ThreadSafe
+public class QueryDispatcher {
+
+	private static final Logger LOG = Logger.getLogger(QueryDispatcher.class.getName());
+	private static final QueryDispatcher INSTANCE = new QueryDispatcher();
+	
+	private final Map<String, ServerPool> serverPools = new ConcurrentHashMap<>();
+	/** Maximum number of queries running at once against a single server. */
+	@Getter private volatile int maxInFlightPerServer = 4;
+
+	public static QueryDispatcher getInstance() { return INSTANCE; }
+	
+	private QueryDispatcher() {}
+	
+	/**
+	 * Set the maximum number of queries that can run at once against each server.
+	 * Only servers first dispatched to after this call use the new limit.
+	 */
+	public void setMaxInFlightPerServer(int maxInFlightPerServer) {
+		Preconditions.checkArgument(maxInFlightPerServer > 0, "maxInFlightPerServer must be positive");
+		this.maxInFlightPerServer = maxInFlightPerServer;
+	}
+	
+	/**
+	 * Run the task on the pool for the selected server if it is below its in-flight limit.
+	 * @return true if the task was accepted, false if that server was already at its limit.
+	 */
+	public boolean tryExecute(String serverName, Runnable task) {
+		ServerPool sp = serverPools.computeIfAbsent(serverName, s -> new ServerPool(s, maxInFlightPerServer));
+		return sp.tryExecute(task);
+	}
+	
+	/** @return The number of queries currently running or waiting to run against the server. */
+	public int getInFlight(String serverName) {
+		ServerPool sp = serverPools.get(serverName);
+		return sp == null ? 0 : sp.limit - sp.permits.availablePermits();
+	}
+	
+	private static class ServerPool {
+		private final int limit;
+		private final Semaphore permits;
+		private final ExecutorService executor;
+		
+		ServerPool(String serverName, int limit) {
+			this.limit = limit;
+			this.permits = new Semaphore(limit);
+			// Permits bound the number of tasks so a cached pool never grows past the limit.
+			this.executor = WorkerThreads.newCachedPool("query-" + serverName + "-");
+		}
+		
+		boolean tryExecute(Runnable task) {
+			if(!permits.tryAcquire()) {
+				return false;
+			}
+			try {
+				executor.execute(() -> {
+					try {
+						task.run();
+					} catch(RuntimeException e) {
+						LOG.log(Level.WARNING, "Dispatched query failed", e);
+					} finally {
+						permits.release();
+					}
+				});
+			} catch(RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+			return true;
+		}
+	}
+}
@@ -29,6 +29,7 @@ package com.sqldashboards.dashy;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -38,29 +39,29 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.sql.rowset.CachedRowSet;
-import javax.sql.rowset.RowSetProvider;
-
+import com.timestored.kdb.QueryResult;
 import com.timestored.kdb.QueryResultI;
 
 import io.micronaut.core.annotation.NonNull;
-import com.kx.c.KException;
-import com.sqldashboards.pro.KdbConnection;
+import com.sqldashboards.dashy.SubscriptionMultiplexer.SubscriptionListener;
 import com.sqldashboards.pro.PivotResultSet;
 import com.sqldashboards.shared.ConnectionManager;
+import com.sqldashboards.shared.QueryControl;
 import com.google.common.base.Preconditions;
 import com.kx.c;
-import kx.jdbc;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -73,22 +74,46 @@ public class QueryEngine2 {
 
 	private static final Logger LOG = Logger.getLogger(QueryEngine2.class.getName());
 
-	private ScheduledExecutorService scheduler;
-	private ExecutorService executor = Executors.newCachedThreadPool();
+	/** Wait before retrying a query that couldn't be dispatched as the server or session was at its limit. */
+	private static final long RETRY_MILLIS = 50;
+	/** Shortest gap between refreshes of one query, including those set to refresh as fast as possible. */
+	private static final long MIN_REFRESH_DELAY_MILLIS = 100;
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+	
 	private final List<QueryEngineListener> listeners = new CopyOnWriteArrayList<QueryEngineListener>();
-	private final int milliseconds = 50;
-	private int counter = 0;
+	private volatile boolean started = false;
 	private ConnectionManager connMan;
 	private final ConcurrentLinkedQueue<Queryable> priorityQueue = new ConcurrentLinkedQueue<Queryable>();
+	private final AtomicBoolean priorityScheduled = new AtomicBoolean(false);
+	/** Each queryable's next refresh, scheduled for when it's due rather than polled for. */
+	private final Map<Queryable, ScheduledFuture<?>> refreshTimers = new ConcurrentHashMap<>();
+	/**
+	 * Runs this session's queries one at a time in SERIAL mode without a thread of its own.
+	 * Also sends pipelined queries and handles their results once they arrive.
+	 */
+	private final Executor serialExecutor = SharedScheduler.newSerialExecutor();
 	private Collection<Queryable> queryables = new CopyOnWriteArrayList<Queryable>();
-	private Map<Queryable,ResultSet> queryablesResultCache = new ConcurrentHashMap<>();
+	/** Fingerprint of the last result sent for each queryable, used to detect if a new result changed. */
+	private Map<Queryable,Long> queryablesFingerprints = new ConcurrentHashMap<>();
 	private final QueryTranslator queryTranslator;
 	private final Map<String, ArgVal> argMap = new ConcurrentHashMap<>();
 	private final Map<HPQ, SubEngine> hpqToSub = new ConcurrentHashMap<>();
-
-	private SendingRate sendingRate = SendingRate.NORMAL;
+	/** Queryables currently being ran or waiting to run, used to prevent overlapping runs. */
+	private final Set<Queryable> inFlight = ConcurrentHashMap.newKeySet();
+	/** Queries currently running, so they can be cancelled once their result is no longer wanted. */
+	private final Map<Queryable, QueryControl> running = new ConcurrentHashMap<>();
+	private final AdaptiveRefresh adaptiveRefresh = new AdaptiveRefresh();
+
+	private volatile SendingRate sendingRate = SendingRate.NORMAL;
+	private volatile DispatchMode dispatchMode = DispatchMode.SERIAL;
+	private volatile Semaphore sessionPermits = new Semaphore(1);
+	/** Off by default so queries slower than their refresh period still complete as they always have. */
+	private volatile double deadlineFraction = 0;
+	private volatile long minDeadlineMillis = 5_000;
 	
 	public static enum SendingRate { NORMAL, SLOW, STOPPED }
+	/** SERIAL runs this session's due queries one at a time, PARALLEL hands them to per-server pools. */
+	public static enum DispatchMode { SERIAL, PARALLEL }
 	public static enum ArgType { STRING, STRINGS, NUMBER, DATE }
 	
 	@Data @AllArgsConstructor
@@ -118,56 +143,90 @@ public class QueryEngine2 {
 	
 	public void addToPriorityQueue(Collection<Queryable> qs) {
 		priorityQueue.addAll(qs);
+		runPriorityQueue(0);
 	}
 	
 	public void startUp() {
-		scheduler = Executors.newSingleThreadScheduledExecutor();
-		
-		if(milliseconds != 0) {
-			scheduler.scheduleWithFixedDelay(new Runnable() {
-				
-				@Override public void run() {
-					if(sendingRate == SendingRate.STOPPED) {
-						return;
-					}
-					try {
-						// decide here which ones to use in case they change during run
-						final ConnectionManager cm = connMan;
+		started = true;
+		runPriorityQueue(0);
+	}
+
+	/** Dispatch the queued queries on the {@link SharedScheduler} after the delay, unless already scheduled to. */
+	private void runPriorityQueue(long delayMillis) {
+		if(started && priorityScheduled.compareAndSet(false, true)) {
+			SharedScheduler.getInstance().schedule(this::dispatchPriorityQueue, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
 	
-						Queryable w = null;
-						while((w=priorityQueue.poll()) != null) {
-							LOG.info("priorityQueueing " + w.getQuery().substring(0, Math.min(w.getQuery().length(), 55)) + "...");
-							requery(w, cm);
-						}
-						
-						counter++;
-						if(counter % 2 == 0) {
-							if(cm!=null && !cm.isEmpty()) {
-								for(Queryable app : queryables) {
-									// refresh period is in millis
-									// this section gets ran every 100 millis
-									// if modulus then run this time
-									int refRate = app.getRefreshPeriod();
-									int m = refRate/100;
-									if(refRate!=-1) {
-										if(sendingRate == SendingRate.NORMAL) {
-											if(m == 0 || counter % (m*2) == 0) {
-												requery(app, cm);		
-											}
-										} else if(sendingRate == SendingRate.SLOW) {
-											if(counter % ((m+1)*2*5) == 0) {
-												requery(app, cm);		
-											}
-										}
-									}
-								}
-							}
-						}
-					} catch(Exception e) {
-						LOG.log(Level.SEVERE, "big loopy scheduled problems", e);
-					}
+	private void dispatchPriorityQueue() {
+		priorityScheduled.set(false);
+		if(!started || sendingRate == SendingRate.STOPPED) {
+			return; // ran by setSendingRate once restarted
+		}
+		try {
+			// decide here which ones to use in case they change during run
+			final ConnectionManager cm = connMan;
+
+			Queryable w = null;
+			List<Queryable> deferred = new ArrayList<>();
+			while((w=priorityQueue.poll()) != null) {
+				LOG.info("priorityQueueing " + w.getQuery().substring(0, Math.min(w.getQuery().length(), 55)) + "...");
+				if(!dispatch(w, cm)) {
+					deferred.add(w); // args may have changed so must run, try again shortly.
 				}
-			}, milliseconds, milliseconds, TimeUnit.MILLISECONDS);
+			}
+			if(!deferred.isEmpty()) {
+				priorityQueue.addAll(deferred);
+				runPriorityQueue(RETRY_MILLIS);
+			}
+		} catch(Exception e) {
+			LOG.log(Level.SEVERE, "big loopy scheduled problems", e);
+		}
+	}
+
+	/** Schedule the queryable's next refresh for when it's due, replacing any refresh scheduled earlier. */
+	private void scheduleRefresh(Queryable q) {
+		int refRate = q.getRefreshPeriod();
+		if(!started || refRate == -1 || !queryables.contains(q)) {
+			cancelRefresh(q);
+			return;
+		}
+		// SLOW sends each result about 5 times less often.
+		long period = sendingRate == SendingRate.SLOW ? (refRate+100L)*5 : refRate;
+		// Period is stretched when the query is slow, a gap is always left so a fast query can't spin.
+		long delay = Math.max(MIN_REFRESH_DELAY_MILLIS, adaptiveRefresh.getDelay(q, period, System.currentTimeMillis()));
+		scheduleRefresh(q, delay);
+	}
+
+	private void scheduleRefresh(Queryable q, long delayMillis) {
+		ScheduledFuture<?> timer = SharedScheduler.getInstance().schedule(() -> refreshDue(q), delayMillis, TimeUnit.MILLISECONDS);
+		ScheduledFuture<?> prev = refreshTimers.put(q, timer);
+		if(prev != null) {
+			prev.cancel(false);
+		}
+	}
+	
+	private void cancelRefresh(Queryable q) {
+		ScheduledFuture<?> prev = refreshTimers.remove(q);
+		if(prev != null) {
+			prev.cancel(false);
+		}
+	}
+	
+	private void refreshDue(Queryable q) {
+		try {
+			final ConnectionManager cm = connMan;
+			if(!started || sendingRate == SendingRate.STOPPED || !queryables.contains(q)) {
+				return; // rescheduled by setSendingRate once restarted
+			}
+			if(cm == null || cm.isEmpty()) {
+				scheduleRefresh(q);
+			} else if(!dispatch(q, cm) && !inFlight.contains(q)) {
+				scheduleRefresh(q, RETRY_MILLIS); // server or session at its limit
+			}
+			// otherwise rescheduled once the running query finishes.
+		} catch(Exception e) {
+			LOG.log(Level.SEVERE, "big loopy scheduled problems", e);
 		}
 	}
 
@@ -182,6 +241,22 @@ public class QueryEngine2 {
 		 */
 		public void tabChanged(final Queryable queryable, final ResultSet qTab, boolean exceededMaxRows);
 
+		/** 
+		 * Called instead of {@link #tabChanged(Queryable, ResultSet, boolean)} when the result came from the {@link SharedQueryCache}.
+		 * @param sharedResult If not null, the result shared with other sessions that can be used to avoid re-serializing.
+		 */
+		default void tabChanged(final Queryable queryable, final ResultSet qTab, boolean exceededMaxRows, SharedQueryCache.CachedResult sharedResult) {
+			tabChanged(queryable, qTab, exceededMaxRows);
+		}
+
+		/** 
+		 * Called instead of {@link #tabChanged(Queryable, ResultSet, boolean)} when a subscription's {@link SubscriptionTable} changed.
+		 * @param delta The rows changed since the previous version of the table, to allow sending only those.
+		 */
+		default void tabUpdated(final Queryable queryable, final ResultSet qTab, boolean exceededMaxRows, SubscriptionTable.TableDelta delta) {
+			tabChanged(queryable, qTab, exceededMaxRows);
+		}
+
 		/** 
 		 * Called if data source was requeried but there was no change in result.
 		 * @param qTab the {@link ResultSet} for the query if there is one, otherwise null.
@@ -195,29 +270,143 @@ public class QueryEngine2 {
 		 */
 		public void queryError(final Queryable queryable, Exception e);
 
+		/**
+		 * Called when a query is slow enough that it's refreshed less often than its refresh period, 
+		 * or once it's back to refreshing at that period.
+		 * @param periodMillis Milliseconds between runs of the query from now on.
+		 * @param avgQueryMillis Moving average of the time the query takes to run.
+		 */
+		default void refreshRateChanged(final Queryable queryable, long periodMillis, long avgQueryMillis) {}
+
+	}
+
+	/**
+	 * Run the query now on this thread or hand it to the {@link QueryDispatcher} depending on {@link DispatchMode}.
+	 * Queries to pipelined kdb servers are always sent from this session's serial executor as sending doesn't block.
+	 * @return true if the query was ran or accepted, false if it was skipped as it's still running from
+	 * a previous tick or the session/server was at its in-flight limit.
+	 */
+	private boolean dispatch(Queryable w, ConnectionManager connMan) {
+		if(!inFlight.add(w)) {
+			return false;
+		}
+		if(dispatchMode == DispatchMode.SERIAL || w.getServerName() == null || isPipelined(w, connMan)) {
+			serialExecutor.execute(() -> {
+				CompletableFuture<Void> done = DONE;
+				try {
+					done = requery(w, connMan);
+				} finally {
+					done.whenComplete((v, e) -> {
+						inFlight.remove(w);
+						scheduleRefresh(w);
+					});
+				}
+			});
+			return true;
+		}
+		final Semaphore permits = sessionPermits;
+		if(!permits.tryAcquire()) {
+			inFlight.remove(w);
+			return false;
+		}
+		boolean accepted = false;
+		try {
+			accepted = QueryDispatcher.getInstance().tryExecute(w.getServerName(), () -> {
+				try {
+					requery(w, connMan);
+				} finally {
+					permits.release();
+					inFlight.remove(w);
+					scheduleRefresh(w);
+				}
+			});
+		} finally {
+			if(!accepted) {
+				permits.release();
+				inFlight.remove(w);
+			}
+		}
+		return accepted;
+	}
+
+	private boolean isPipelined(Queryable w, ConnectionManager connMan) {
+		ServerConfig sc = w.getServerName() == null ? null : connMan.getServer(w.getServerName());
+		return sc != null && connMan.isPipelined(sc);
 	}
 
-	private void requery(Queryable w, ConnectionManager connMan) {
+	/**
+	 * Run the query and notify listeners of its result. Pipelined kdb queries are sent without waiting for their
+	 * result, which is handled on this session's serial executor once it arrives.
+	 * @return Completes once listeners were notified, already complete unless the query was pipelined.
+	 */
+	private CompletableFuture<Void> requery(Queryable w, ConnectionManager connMan) {
 		// avoid querying for empty queries
 		if(w.getQuery() == null || w.getQuery().length()<1 ||  w.getServerName()==null || connMan.isEmpty()) {
-			return;
+			return DONE;
 		}
 
 		ServerConfig sc = getSCorThrow(connMan, w.getServerName());
 		if(sc.isStreaming()) {
-			return; // Can ignore as streaming ran elsewhere.
+			return DONE; // Can ignore as streaming ran elsewhere.
+		}
+		QueryControl control = new QueryControl(QueryControl.shortest(getDeadlineMillis(w), sc.getQueryTimeout() * 1000L));
+		running.put(w, control);
+		long start = System.currentTimeMillis();
+		adaptiveRefresh.started(w, start);
+		CompletableFuture<EngineResult> result;
+		try {
+			result = performQuery(w, connMan, queryTranslator, SharedQueryCache.getInstance(), control, connMan.isPipelined(sc));
+		} catch(RuntimeException e) {
+			result = new CompletableFuture<>();
+			result.completeExceptionally(e);
+		}
+		result = result.whenComplete((er, e) -> {
+			running.remove(w, control);
+			control.finish();
+		});
+		if(!result.isDone()) {
+			return result.thenAcceptAsync(er -> queried(w, control, start, er), serialExecutor);
+		}
+		queried(w, control, start, result.join());
+		return DONE;
+	}
+	
+	/** Record how long the query took and notify listeners of its result. */
+	private void queried(Queryable w, QueryControl control, long start, EngineResult engineResult) {
+		if(control.isCancelled() && !control.isTimedOut()) {
+			return; // superseded by new args or the session closed, nobody will see the result.
+		}
+		if(w.getRefreshPeriod() >= 0) {
+			// Timed out runs count too, raising the average, the period and so the deadline until the query completes.
+			AdaptiveRefresh.Rate rate = adaptiveRefresh.finished(w, System.currentTimeMillis() - start);
+			if(rate != null) {
+				LOG.info("Refreshing every " + rate.getPeriod() + " ms as query takes " + rate.getAvgQueryMillis() + " ms: " + w.getQuery());
+				for(QueryEngineListener l : listeners) {
+					l.refreshRateChanged(w, rate.getPeriod(), rate.getAvgQueryMillis());
+				}
+			}
 		}
-		EngineResult engineResult = performQuery(w, connMan, queryTranslator);
 
 		// notify listeners of success or error
 		ResultSet crs = engineResult.getRs();
 	    if(crs != null) {
 	    	// Only notify listeners if there was an actual change.
-	    	ResultSet prevRS = queryablesResultCache.get(w);
-	    	if(!DBHelper.isEqual(prevRS, crs)) {
-				queryablesResultCache.put(w, crs);
+	    	Long prevFingerprint = queryablesFingerprints.get(w);
+	    	Long fingerprint = null;
+	    	try {
+	    		SharedQueryCache.CachedResult shared = engineResult.getSharedResult();
+	    		fingerprint = shared != null ? shared.getFingerprint() : DBHelper.fingerprint(crs);
+	    	} catch(SQLException e) {
+	    		LOG.log(Level.WARNING, "Error fingerprinting result. Assuming changed.", e);
+	    	}
+	    	if(fingerprint == null || !fingerprint.equals(prevFingerprint)) {
+	    		if(fingerprint == null) {
+	    			queryablesFingerprints.remove(w);
+	    		} else {
+	    			queryablesFingerprints.put(w, fingerprint);
+	    		}
 				for(QueryEngineListener l : listeners) {
-					l.tabChanged(w, crs, engineResult.getQr().isExceededMax());
+					l.tabChanged(w, crs, engineResult.getQr().isExceededMax(), engineResult.getSharedResult());
 				}
 	    	} else {
 				for(QueryEngineListener l : listeners) {
@@ -232,6 +421,29 @@ public class QueryEngine2 {
 		}
 	}
 
+	/** @return Milliseconds the queryable may run before it's cancelled, 0 for no limit other than the server's. */
+	private long getDeadlineMillis(Queryable w) {
+		if(w.getTimeoutMillis() > 0) {
+			return w.getTimeoutMillis();
+		}
+		if(w.getRefreshPeriod() < 0 || deadlineFraction <= 0) {
+			return 0; // automatic deadline off or only queried on interaction, the user waits for it.
+		}
+		// The stretched period, else a query slower than its deadline would never complete and never stretch it.
+		long period = adaptiveRefresh.getPeriod(w, w.getRefreshPeriod());
+		return Math.max(minDeadlineMillis, (long) (period * deadlineFraction));
+	}
+
+	/** Cancel any running query for these queryables as its result is no longer wanted. */
+	private void cancelRunning(Collection<Queryable> qs) {
+		for(Queryable q : qs) {
+			QueryControl control = running.get(q);
+			if(control != null) {
+				control.cancel();
+			}
+		}
+	}
+
 	private static ServerConfig getSCorThrow(ConnectionManager connMan, String srv) {
 		if(srv == null) {
 			throw new IllegalStateException("No Server Selected.");
@@ -244,8 +456,31 @@ public class QueryEngine2 {
 	}
 
 	public static EngineResult performQuery(Queryable w, ConnectionManager connMan, QueryTranslator queryTranslator) {
+		return performQuery(w, connMan, queryTranslator, null);
+	}
+
+	/**
+	 * @param sharedCache If not null and enabled, identical queries from other sessions are ran once and their result shared.
+	 */
+	public static EngineResult performQuery(Queryable w, ConnectionManager connMan, QueryTranslator queryTranslator, SharedQueryCache sharedCache) {
+		return performQuery(w, connMan, queryTranslator, sharedCache, null);
+	}
+
+	/**
+	 * @param control If not null, cancelling it cancels the query, otherwise only the server's query timeout applies.
+	 */
+	public static EngineResult performQuery(Queryable w, ConnectionManager connMan, QueryTranslator queryTranslator, 
+			SharedQueryCache sharedCache, QueryControl control) {
+		return performQuery(w, connMan, queryTranslator, sharedCache, control, false).join();
+	}
+
+	/**
+	 * @param async true to send the query using {@link ConnectionManager#queryAsync(ServerConfig, String, QueryControl)}, 
+	 * 	false to run it on this thread in which case the returned future is already complete.
+	 */
+	private static CompletableFuture<EngineResult> performQuery(Queryable w, ConnectionManager connMan, QueryTranslator queryTranslator, 
+			SharedQueryCache sharedCache, QueryControl control, boolean async) {
 		final String qry = w.getQuery();
-		EngineResult engineResult = new EngineResult(qry, null, null, null);
 		// convert the query
 	    String query = qry;
 		
@@ -268,12 +503,41 @@ public class QueryEngine2 {
 				}
 			}
 
-			QueryResultI qr = connMan.query(sc, query);
+			final String q = query;
+			final TranslationResult translation = tr;
+			Supplier<CompletableFuture<QueryResultI>> loader = () -> async ? connMan.queryAsync(sc, q, control)
+					: CompletableFuture.completedFuture(control == null ? connMan.query(sc, q) : connMan.query(sc, q, control));
+			if(sharedCache != null && sharedCache.isEnabled()) {
+				return sharedCache.queryAsync(sc, query, w.getServerCmd(), Math.max(0, w.getRefreshPeriod()), control, loader)
+						.thenApply(shared -> toEngineResult(qry, q, sc, translation, shared.getQr(), shared));
+			}
+			return loader.get().thenApply(qr -> toEngineResult(qry, q, sc, translation, qr, null));
+		} catch (Exception ee) {
+			LOG.log(Level.WARNING, "app update error for query:" + qry);
+			return CompletableFuture.completedFuture(new EngineResult(qry, null, null, ee));
+		}
+	}
+	
+	/** @param shared If not null, the result shared with other sessions that qr came from. */
+	private static EngineResult toEngineResult(String qry, String query, ServerConfig sc, TranslationResult tr, 
+			QueryResultI qr, SharedQueryCache.CachedResult shared) {
+		EngineResult engineResult;
+		try {
+			if(shared != null) {
+				if(shared.isShareable()) {
+					// Wrap so each caller has their own cursor and closing it doesn't affect other sessions.
+					qr = QueryResult.successfulResult(qr.getQuery(), qr.getK(), shared.newCursor(), qr.getConsoleView(), qr.isExceededMax());
+				} else {
+					shared = null;
+				}
+			}
 			ResultSet rs = qr.getRs();
 			if(tr != null && tr.getPivotlist().size() > 0 && !sc.isKDB()) {
 				rs = new PivotResultSet(rs, tr.getGroupbylist(), tr.getPivotlist());
+				shared = null; // pivot is applied per session so the shared serialized form can't be used.
 			}
 			engineResult = new EngineResult(qry, qr, rs, null);
+			engineResult.setSharedResult(shared);
 			if(qr.isExceededMax()) {
 				LOG.severe("Result is large. RS for query: " + query);
 			}
@@ -290,24 +554,31 @@ public class QueryEngine2 {
 	
 	public void shutDown() {
 		LOG.info("shutDown");
-		if(scheduler != null) {
-			scheduler.shutdown();
-		}
-		scheduler = null;
+		started = false;
+		refreshTimers.values().forEach(t -> t.cancel(false));
+		refreshTimers.clear();
+		priorityQueue.clear();
+		running.values().forEach(QueryControl::cancel);
+		adaptiveRefresh.clear();
 		listeners.clear();
-		queryablesResultCache.clear();
+		queryablesFingerprints.clear();
 		hpqToSub.forEach((hpq,subEng) -> subEng.requestStop());
 		hpqToSub.clear();
-		executor.shutdown();
-		connMan.close();
+		// connMan is NOT closed as it's shared between all sessions and owned by the application.
 	}
 
 	public void setQueryables(Collection<Queryable> queryables) {
 		hpqToSub.forEach((hpq,subEng) -> subEng.requestStop());
 		hpqToSub.clear();
+		Set<Queryable> removed = new HashSet<>(running.keySet());
+		removed.addAll(refreshTimers.keySet());
+		removed.removeAll(queryables);
+		cancelRunning(removed);
+		removed.forEach(this::cancelRefresh);
+		adaptiveRefresh.retain(queryables);
 		this.queryables = new CopyOnWriteArrayList<>(Objects.requireNonNull(queryables));
 		addToPriorityQueue(queryables);
-		this.queryablesResultCache.clear();
+		this.queryablesFingerprints.clear();
 		for(Queryable qble : queryables) {
 			subscribeTo(qble);
 		}
@@ -320,14 +591,16 @@ public class QueryEngine2 {
 		final String query;
 	}
 	
-	@AllArgsConstructor
-	private class SubEngine implements Runnable {
+	/** Receives one subscription's updates from the {@link SubscriptionRegistry} and passes them to listeners. */
+	private class SubEngine implements SubscriptionListener {
 
-		private KdbConnection kdbConn;
+		private volatile SubscriptionRegistry.Handle subscription;
 		private volatile boolean shutdownRequested = false;
 		private final ServerConfig sc;
 		private final Queryable qble;
 		private final String query;
+		/** If not null, batches are accumulated into this table rather than each replacing the last. */
+		private final SubscriptionTable table = SubscriptionTable.newDefault();
 
 		public SubEngine(ServerConfig sc, Queryable qble, String query) {
 			super();
@@ -336,52 +609,92 @@ public class QueryEngine2 {
 			this.query = query;
 		};
 		
-		private void sendFormatError(final Queryable queryable) {  
+		void start() {
+			subscription = SubscriptionRegistry.getInstance().subscribe(connMan, sc, query, this);
+			if(shutdownRequested) {
+				subscription.close();
+			}
+		}
+		
+		/** @param r A table already conflated by the shared subscription. */
+		@Override public void messageReceived(Object r) {
+			if (r instanceof c.Flip) {
+				publish((c.Flip) r);
+			}
+		}
+		
+		private void publish(c.Flip tbl) {
+			if(shutdownRequested) {
+				return;
+			}
+			try {
+				if(table != null) {
+					SubscriptionTable.TableDelta delta;
+					c.Flip snapshot;
+					synchronized(table) {
+						delta = table.apply(tbl);
+						snapshot = table.getTable();
+					}
+					publishTable(snapshot, delta);
+					return;
+				}
+				FlipResultSet crs = new FlipResultSet(tbl, ConnectionManager.MAX_ROWS);
+				boolean exceededMaxRows = crs.getRowCount() >= ConnectionManager.MAX_ROWS;
+				for(QueryEngineListener l : listeners) {
+					l.tabChanged(qble, crs, exceededMaxRows);
+				}
+			} catch (SQLException | RuntimeException e) {
+				messageError(e);
+			}
+		}
+		
+		private void publishTable(c.Flip snapshot, SubscriptionTable.TableDelta delta) throws SQLException {
+			FlipResultSet crs = new FlipResultSet(snapshot, ConnectionManager.MAX_ROWS);
+			boolean exceededMaxRows = crs.getRowCount() >= ConnectionManager.MAX_ROWS;
 			for(QueryEngineListener l : listeners) {
-				l.queryError(qble, new IllegalStateException("Data from subscription wasn't (`upd;`tablename;tbl) format."));
+				l.tabUpdated(qble, crs, exceededMaxRows, delta);
 			}
 		}
 		
-		@Override public void run() {
-		    try {
-		    	kdbConn = connMan.getKdbConnection(sc);
-		    	kdbConn.send(query);
-		    	while (!Thread.currentThread().isInterrupted() && !shutdownRequested) {
-		    	    try {
-		    	        Object r = kdbConn.k();
-		    	        if (r != null) {
-		    	        	if(!(r instanceof Object[])) { sendFormatError(qble); continue; }
-		    	            Object[] data = (Object[]) r;
-		    	        	if(data.length<3 || data[1] == null || data[2] == null || !(data[2] instanceof c.Flip)) { sendFormatError(qble); continue; }
-//		    	            String tblname = (data[1]).toString();
-		    	            c.Flip tbl = (c.Flip) data[2];
-		    				ResultSet rs = new jdbc.rs(null, tbl, ConnectionManager.MAX_ROWS);
-		    			    CachedRowSet crs = RowSetProvider.newFactory().createCachedRowSet();
-		    			    crs.populate(rs);
-		    			    boolean exceededMaxRows = DBHelper.getSize(crs) >= ConnectionManager.MAX_ROWS;
-		    				for(QueryEngineListener l : listeners) {
-		    					l.tabChanged(qble, crs, exceededMaxRows);
-		    				}
-		    	        }
-		    	    } catch (SQLException | KException | RuntimeException e) {
-	    				for(QueryEngineListener l : listeners) {
-	    					l.queryError(qble, e);
-	    				}
-		    	    }
-		    	}
-		    } catch (IOException e) {
-				if(!Thread.currentThread().isInterrupted() && !shutdownRequested) {
-					e.printStackTrace();
-				} else {
-					LOG.info("shut Fine");
+		/** Send the whole current table again, for when a client lost its copy. */
+		void republish() {
+			if(table == null || shutdownRequested) {
+				return;
+			}
+			SubscriptionTable.TableDelta delta;
+			c.Flip snapshot;
+			synchronized(table) {
+				snapshot = table.getTable();
+				int rows = snapshot == null ? 0 : FlipHelper.count(snapshot);
+				delta = new SubscriptionTable.TableDelta(table.getVersion(), table.getVersion(), true, new int[0], new int[0], 0, rows);
+			}
+			if(snapshot != null) {
+				try {
+					publishTable(snapshot, delta);
+				} catch (SQLException | RuntimeException e) {
+					messageError(e);
 				}
 			}
-		    LOG.info("Shutting down subscriber for query:" + query);
+		}
+		
+		@Override public void messageError(Exception e) {
+			for(QueryEngineListener l : listeners) {
+				l.queryError(qble, e);
+			}
+		}
+		
+		@Override public void subscriptionClosed(IOException e) {
+			if(e != null && !shutdownRequested) {
+				LOG.log(Level.WARNING, "Subscription failed for query:" + query, e);
+				messageError(e);
+			}
+			LOG.info("Shutting down subscriber for query:" + query);
 		}
 		
 		void requestStop() {
 			shutdownRequested = true;
-			if(kdbConn != null) { try { kdbConn.close(); } catch (IOException e) { } kdbConn=null; }
+			SubscriptionRegistry.Handle sub = subscription;
+			if(sub != null) { sub.close(); }
 		}
 	}
 
@@ -413,7 +726,7 @@ public class QueryEngine2 {
 		SubEngine subEng = new SubEngine(sc, qble, tr.getTranslation());
 		SubEngine existing = hpqToSub.putIfAbsent(hpq, subEng);
 		if(existing == null) {
-			executor.execute(subEng);	
+			subEng.start();
 		}
 	}
 	
@@ -449,7 +762,8 @@ public class QueryEngine2 {
 		}
 		// perform heavy operations at end of batch only
 		qrs.forEach(q -> unsubscribeFrom(q));
-		priorityQueue.addAll(qrs);
+		cancelRunning(qrs);
+		addToPriorityQueue(qrs);
 		qrs.forEach(q -> subscribeTo(q));	
 	}
 	
@@ -470,6 +784,11 @@ public class QueryEngine2 {
 
 	public boolean remove(Queryable q) {
 		boolean removed = queryables.remove(q); // Remove from queryables first in case unsubscribe throws exception
+		if(!queryables.contains(q)) {
+			cancelRunning(Arrays.asList(q));
+			cancelRefresh(q);
+			adaptiveRefresh.remove(q);
+		}
 		unsubscribeFrom(q);
 		return removed;
 	}
@@ -481,7 +800,59 @@ public class QueryEngine2 {
 		return added;
 	}
 
+	/** Forget the last result of a queryable and query it again soon, so that listeners receive it even if unchanged. */
+	public boolean refresh(Queryable q) {
+		queryablesFingerprints.remove(q);
+		hpqToSub.values().stream().filter(se -> se.qble.equals(q)).forEach(SubEngine::republish);
+		if(!queryables.contains(q)) {
+			return false;
+		}
+		addToPriorityQueue(Arrays.asList(q));
+		return true;
+	}
+
 	
-	public void setSendingRate(SendingRate sendingRate) { this.sendingRate = Preconditions.checkNotNull(sendingRate); }
+	public void setSendingRate(SendingRate sendingRate) {
+		SendingRate prev = this.sendingRate;
+		this.sendingRate = Preconditions.checkNotNull(sendingRate);
+		if(prev != sendingRate) {
+			// Timers were set for the old rate or skipped while STOPPED.
+			queryables.forEach(q -> { if(!inFlight.contains(q)) { scheduleRefresh(q); } });
+			runPriorityQueue(0);
+		}
+	}
+
+	/**
+	 * @param maxInFlight The maximum number of queries this engine can have running at once in PARALLEL mode.
+	 */
+	public void setDispatchMode(DispatchMode dispatchMode, int maxInFlight) {
+		Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+		this.dispatchMode = Preconditions.checkNotNull(dispatchMode);
+		this.sessionPermits = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Set the default deadline of refreshing queries, after which they are cancelled so that a slow query
+	 * doesn't hold its connection and thread past the point where its next refresh is due.
+	 * Queryables with their own timeout and the server's query timeout still apply.
+	 * The deadline is a fraction of the period as stretched by {@link #setMaxRefreshShare(double)}, 
+	 * so with a share of 0 a query slower than its deadline is cancelled every time.
+	 * @param refreshFraction Fraction of the refresh period a query may run for, 0 for no default deadline.
+	 * @param minMillis Deadline used when the fraction of the refresh period is shorter than this.
+	 */
+	public void setDeadline(double refreshFraction, long minMillis) {
+		Preconditions.checkArgument(refreshFraction >= 0, "refreshFraction must be >=0");
+		Preconditions.checkArgument(minMillis >= 0, "minMillis must be >=0");
+		this.deadlineFraction = refreshFraction;
+		this.minDeadlineMillis = minMillis;
+	}
+
+	/**
+	 * @param maxShare The most of its refresh period a query may spend running, a query that is slower on average
+	 * has its refresh period stretched so that the database isn't kept busy. 0 to always use the refresh period.
+	 */
+	public void setMaxRefreshShare(double maxShare) {
+		adaptiveRefresh.setMaxShare(maxShare);
+	}
 
 }
@@ -53,6 +53,7 @@ public class Queryable {
    	private String serverCmd = "";
     private String query = "";
     private int refreshPeriod;
+    private int timeoutMillis;
 	
 	public Queryable() {}
 
@@ -72,6 +73,7 @@ public class Queryable {
 		this.query = app.getQuery();
 		this.refreshPeriod = app.getRefreshPeriod();
 		this.serverCmd = app.getServerCmd();
+		this.timeoutMillis = app.getTimeoutMillis();
 	}
 
 	public void setQuery(String query) {
@@ -103,6 +105,18 @@ public class Queryable {
 		cc();
 	}
 
+	/**
+	 * Cancel the query if it runs for longer than this, rather than the default deadline based on the refresh period.
+	 * @param milliseconds The maximum time the query may run, 0 means use the default deadline.
+	 */
+	public void setTimeoutMillis(int milliseconds) {
+		if(milliseconds < 0) {
+			throw new IllegalArgumentException("timeout must be >=0");
+		}
+		this.timeoutMillis = milliseconds;
+		cc();
+	}
+
 	public String getServerName() { return serverName; }
 	public String getServerCmd() { return serverCmd; }
 	public String getQuery() { return query; }
@@ -112,6 +126,9 @@ public class Queryable {
 	 * 0 means re-query as fast as possible. -1 Means don't re-query except on interaction. 
 	 */
 	public int getRefreshPeriod() { return refreshPeriod; }
+
+	/** @return milliseconds the query may run before being cancelled, 0 means use the default deadline. */
+	public int getTimeoutMillis() { return timeoutMillis; }
 	
 	/** cc = configChanged so notify listeners **/
 	private void cc() {
@@ -134,6 +151,7 @@ public class Queryable {
 		int result = 1;
 		result = prime * result + ((query == null) ? 0 : query.hashCode());
 		result = prime * result + refreshPeriod;
+		result = prime * result + timeoutMillis;
 		result = prime * result + ((serverName == null) ? 0 : serverName.hashCode());
 		result = prime * result + ((serverCmd == null) ? 0 : serverCmd.hashCode());
 		return result;
@@ -155,6 +173,8 @@ public class Queryable {
 			return false;
 		if (refreshPeriod != other.refreshPeriod)
 			return false;
+		if (timeoutMillis != other.timeoutMillis)
+			return false;
 		if (serverName == null) {
 			if (other.serverName != null)
 				return false;
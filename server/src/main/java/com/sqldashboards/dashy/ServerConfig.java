@@ -50,6 +50,10 @@ public class ServerConfig {
 	private final JdbcTypes jdbcType;
 	@Getter private final String queryWrapPre;
 	@Getter private final String queryWrapPost;
+	/** true to compress large kdb IPC messages sent to this server, useful when it is far away over a WAN. **/
+	@Getter private final boolean compress;
+	/** Seconds a query to this server may run before it is cancelled, 0 for no limit. **/
+	@Getter private final int queryTimeout;
 	
 
 	public ServerConfig(String host, int port, String username, 
@@ -67,10 +71,30 @@ public class ServerConfig {
 	 */
 	public ServerConfig(String host, int port, String username, 
 			String password, String name, JdbcTypes jdbcType, String database, String folder, String queryWrapPre, String queryWrapPost) {
+		this(host, port, username, password, name, jdbcType, database, folder, queryWrapPre, queryWrapPost, false);
+	}
+
+	/**
+	 * @param compress true to compress kdb IPC messages over 2000 bytes sent to this server,
+	 * responses are compressed or not by the kdb server itself.
+	 */
+	public ServerConfig(String host, int port, String username, String password, String name, JdbcTypes jdbcType, 
+			String database, String folder, String queryWrapPre, String queryWrapPost, boolean compress) {
+		this(host, port, username, password, name, jdbcType, database, folder, queryWrapPre, queryWrapPost, compress, 0);
+	}
+
+	/**
+	 * @param queryTimeout Seconds a query may run before it is cancelled, 0 for no limit.
+	 */
+	public ServerConfig(String host, int port, String username, String password, String name, JdbcTypes jdbcType, 
+			String database, String folder, String queryWrapPre, String queryWrapPost, boolean compress, int queryTimeout) {
 
 		if(port<0) {
 			throw new IllegalArgumentException("Must specify positive port");
 		}
+		if(queryTimeout<0) {
+			throw new IllegalArgumentException("queryTimeout must be >=0");
+		}
 		if(name.endsWith("/")) {
 			throw new IllegalArgumentException("Name cannot end with a /");
 		}
@@ -82,6 +106,8 @@ public class ServerConfig {
 		this.password = password;
 		this.queryWrapPre = queryWrapPre;
 		this.queryWrapPost = queryWrapPost;
+		this.compress = compress;
+		this.queryTimeout = queryTimeout;
 		
 		// clean any folders, remove multiple empty /s
 		String n = name;
@@ -41,6 +41,8 @@ public class ServerConfigBuilder {
 	private int port = -1;
 	private String database;
 	private JdbcTypes jdbcType = JdbcTypes.KDB;
+	private boolean compress = false;
+	private int queryTimeout = 0;
 
 //	public ServerConfigBuilder() { }
 
@@ -52,6 +54,8 @@ public class ServerConfigBuilder {
 		port = sc.getPort();
 		database = sc.getDatabase();
 		jdbcType = sc.getJdbcType();
+		compress = sc.isCompress();
+		queryTimeout = sc.getQueryTimeout();
 	}
 
 	public ServerConfigBuilder setName(String name) {this.name = name;	return this; }
@@ -59,6 +63,8 @@ public class ServerConfigBuilder {
 	public ServerConfigBuilder setPassword(String password) { this.password = password; return this; }
 	public ServerConfigBuilder setDatabase(String database) { this.database = database; return this; }
 	public ServerConfigBuilder setJdbcType(JdbcTypes jdbcType) { this.jdbcType = jdbcType; return this; }
+	public ServerConfigBuilder setCompress(boolean compress) { this.compress = compress; return this; }
+	public ServerConfigBuilder setQueryTimeout(int queryTimeout) { this.queryTimeout = queryTimeout; return this; }
 	
 	public ServerConfigBuilder setFolder(String folder) { 
 		
@@ -85,6 +91,6 @@ public class ServerConfigBuilder {
 		if(port == -1) {
 			port = jdbcType.getDefaultPort();
 		}
-		return new ServerConfig(host, port, username, password, name, jdbcType, database);
+		return new ServerConfig(host, port, username, password, name, jdbcType, database, null, "", "", compress, queryTimeout);
 	}
 }
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import com.sqldashboards.shared.QueryControl;
+import com.timestored.kdb.QueryResult;
+import com.timestored.kdb.QueryResultI;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Process-wide cache of query results keyed on server, translated query and serverCmd.
+ * When many sessions view the same dashboard, each distinct query runs once per refresh period
+ * and concurrent requests for the same key wait on the single running query (single-flight).
+ * Results are shared using {@link ShareableResultSet#createShared()} so each consumer gets its own cursor
+ * over the same rows.
+ */
+@ThreadSafe
+public class SharedQueryCache {
+
+	private static final Logger LOG = Logger.getLogger(SharedQueryCache.class.getName());
+	private static final SharedQueryCache INSTANCE = new SharedQueryCache();
+	/** How often completed entries older than the longest max age requested for them are removed. */
+	private static final long SWEEP_MILLIS = 10_000;
+	
+	private final Map<Key, CachedResult> cache = new ConcurrentHashMap<>();
+	@Getter @Setter private volatile boolean enabled = true;
+	
+	public static SharedQueryCache getInstance() { return INSTANCE; }
+	
+	private SharedQueryCache() {
+		SharedScheduler.getInstance().scheduleWithFixedDelay(this::sweep, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	@Data
+	private static class Key {
+		private final String serverName;
+		private final String query;
+		private final String serverCmd;
+	}
+	
+	/**
+	 * Return a result for the query, either one completed within maxAgeMillis, one that is currently
+	 * running or else run the loader on this thread and share its result.
+	 * @param translatedQuery The query after translation, i.e. exactly what will be sent to the server.
+	 * @param maxAgeMillis The oldest completed result that can be reused, 0 means only join a running query.
+	 * 	A completed result is only kept for the longest max age of the callers that requested it.
+	 * @param control If not null, cancelling it stops this caller waiting on another session's query. 
+	 * 	The loader must stop its own query, other sessions waiting on it then run theirs.
+	 */
+	public CachedResult query(ServerConfig sc, String translatedQuery, String serverCmd, long maxAgeMillis, QueryControl control, 
+			Supplier<QueryResultI> loader) {
+		return queryAsync(sc, translatedQuery, serverCmd, maxAgeMillis, control, 
+				() -> CompletableFuture.completedFuture(loader.get())).join();
+	}
+	
+	/**
+	 * As {@link #query(ServerConfig, String, String, long, QueryControl, Supplier)} but without blocking, 
+	 * the loader starts the query and returns a future of its result.
+	 */
+	public CompletableFuture<CachedResult> queryAsync(ServerConfig sc, String translatedQuery, String serverCmd, long maxAgeMillis, 
+			QueryControl control, Supplier<CompletableFuture<QueryResultI>> loader) {
+		return lookup(new Key(sc.getName(), translatedQuery, serverCmd == null ? "" : serverCmd), maxAgeMillis, control, loader);
+	}
+	
+	private CompletableFuture<CachedResult> lookup(Key k, long maxAgeMillis, QueryControl control, 
+			Supplier<CompletableFuture<QueryResultI>> loader) {
+		CachedResult existing = cache.get(k);
+		if(existing == null || (existing.isDone() && existing.getAgeMillis() > maxAgeMillis)) {
+			return load(k, existing, maxAgeMillis, control, loader);
+		}
+		existing.retainFor(maxAgeMillis);
+		return existing.whenDone(control).thenCompose(arrived -> {
+			if(!arrived) {
+				CachedResult cancelled = new CachedResult();
+				cancelled.complete(QueryResult.exceptionResult(k.getQuery(), control.newCancelledException()));
+				return CompletableFuture.completedFuture(cancelled);
+			}
+			// failed or unshareable result, run our own query.
+			return existing.isShareable() ? CompletableFuture.completedFuture(existing) : load(k, existing, maxAgeMillis, control, loader);
+		});
+	}
+	
+	/** Run the loader and share its result unless another caller replaced existing first, in which case use theirs. */
+	private CompletableFuture<CachedResult> load(Key k, CachedResult existing, long maxAgeMillis, QueryControl control,
+			Supplier<CompletableFuture<QueryResultI>> loader) {
+		CachedResult mine = new CachedResult();
+		mine.retainFor(maxAgeMillis);
+		boolean won = existing == null ? cache.putIfAbsent(k, mine) == null : cache.replace(k, existing, mine);
+		if(!won) {
+			return lookup(k, maxAgeMillis, control, loader);
+		}
+		CompletableFuture<QueryResultI> f;
+		try {
+			f = loader.get();
+		} catch(RuntimeException e) {
+			f = CompletableFuture.completedFuture(QueryResult.exceptionResult(k.getQuery(), e));
+		}
+		return f.handle((qr, e) -> {
+			mine.complete(qr != null ? qr : QueryResult.exceptionResult(k.getQuery(), new IOException(e)));
+			// Nobody may reuse it once complete, e.g. ad-hoc queries, so only callers already waiting see it.
+			if(!mine.isShareable() || mine.isExpired()) {
+				cache.remove(k, mine);
+			}
+			return mine;
+		});
+	}
+	
+	private void sweep() {
+		cache.values().removeIf(CachedResult::isExpired);
+		LOG.fine("SharedQueryCache size = " + cache.size());
+	}
+	
+	/** Remove all cached results, e.g. after a server is edited. */
+	public void clear() { cache.clear(); }
+
+	/** A single query result shared between all sessions that ran the same query. */
+	public static class CachedResult {
+		private final CompletableFuture<QueryResultI> future = new CompletableFuture<>();
+		private volatile long completedAt;
+		/** The longest max age of any caller that ran or reused this result, it's removed once older. */
+		private final AtomicLong maxAgeMillis = new AtomicLong();
+		/** UTF-8 bytes per format, never modified once stored so they can be sent to every session without copying. */
+		private final Map<String,byte[]> serialized = new HashMap<>(2);
+		private Long fingerprint;
+
+		/** Converts a result to the UTF-8 text that will be sent to clients. */
+		@FunctionalInterface
+		public static interface Serializer {
+			byte[] apply(ResultSet rs) throws IOException;
+		}
+		
+		private void complete(QueryResultI qr) {
+			completedAt = System.currentTimeMillis();
+			future.complete(qr);
+		}
+		
+		/** @return Future completed with true once the result arrived, false if the control was cancelled first. */
+		private CompletableFuture<Boolean> whenDone(QueryControl control) {
+			if(control == null) {
+				return future.thenApply(qr -> true);
+			}
+			CompletableFuture<Boolean> arrived = new CompletableFuture<>();
+			if(!control.onCancel(() -> arrived.complete(false))) {
+				arrived.complete(false);
+				return arrived;
+			}
+			future.thenRun(() -> {
+				// Cleared first as completing runs the caller's next step, which may set its own canceller.
+				control.clearCanceller();
+				arrived.complete(true);
+			});
+			return arrived;
+		}
+		
+		boolean isDone() { return future.isDone(); }
+		
+		long getAgeMillis() { return System.currentTimeMillis() - completedAt; }
+		
+		private void retainFor(long millis) { maxAgeMillis.accumulateAndGet(millis, Math::max); }
+		
+		/** @return true if completed and too old for every caller that requested it to reuse. */
+		private boolean isExpired() { return future.isDone() && getAgeMillis() >= maxAgeMillis.get(); }
+		
+		/** @return true if completed with a result set that can be given to multiple consumers. */
+		boolean isShareable() {
+			return future.isDone() && future.join().getRs() instanceof ShareableResultSet;
+		}
+		
+		/** @return The original result. Its ResultSet must NOT be read directly, use {@link #newCursor()}. */
+		public QueryResultI getQr() { return future.join(); }
+		
+		/** @return A new ResultSet over the shared rows with its own independent cursor. */
+		public ResultSet newCursor() throws SQLException {
+			ResultSet rs = future.join().getRs();
+			return rs instanceof ShareableResultSet ? ((ShareableResultSet) rs).createShared() : rs;
+		}
+		
+		/** @return The {@link DBHelper#fingerprint(ResultSet)} of this result, calculated once for all sessions. */
+		public synchronized long getFingerprint() throws SQLException {
+			if(fingerprint == null) {
+				fingerprint = DBHelper.fingerprint(newCursor());
+			}
+			return fingerprint;
+		}
+		
+		/**
+		 * @param format Name of the output format, each format is serialized separately.
+		 * @return The serialized form of this result, the serializer is only ran for the first caller
+		 * of each format and every later caller receives the same array, which must not be modified.
+		 */
+		public synchronized byte[] serialize(String format, Serializer serializer) throws IOException {
+			byte[] txt = serialized.get(format);
+			if(txt == null) {
+				try {
+					txt = serializer.apply(newCursor());
+				} catch (SQLException e) {
+					throw new IOException(e);
+				}
+				serialized.put(format, txt);
+			}
+			return txt;
+		}
+	}
+}
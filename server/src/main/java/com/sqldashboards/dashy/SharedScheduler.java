@@ -0,0 +1,101 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sqldashboards.shared.WorkerThreads;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * One timer thread shared by every session for query refreshes and heartbeats, each task is scheduled
+ * for the exact time it's due. Sessions waiting for their next refresh then cost no threads or wakeups.
+ * Tasks ran by the timer must be short, anything that may block such as a query is handed to an executor,
+ * e.g. one from {@link #newSerialExecutor()}.
+ */
+@ThreadSafe
+public class SharedScheduler {
+
+	private static final Logger LOG = Logger.getLogger(SharedScheduler.class.getName());
+	private static final ScheduledThreadPoolExecutor TIMER;
+	/** Threads only exist while tasks are running, idle ones end after a minute. */
+	private static final ExecutorService WORKERS;
+	
+	static {
+		TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "shared-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		TIMER.setRemoveOnCancelPolicy(true); // refresh timers are often replaced before they fire
+		WORKERS = WorkerThreads.newCachedPool("query-serial-");
+	}
+	
+	private SharedScheduler() {}
+
+	/** @return The shared timer, it must not be shut down. */
+	public static ScheduledExecutorService getInstance() { return TIMER; }
+	
+	/** @return Executor that runs its tasks one at a time in the order submitted on shared worker threads. */
+	public static Executor newSerialExecutor() { return new SerialExecutor(); }
+	
+	private static class SerialExecutor implements Executor {
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+		// guarded by this
+		private Runnable active;
+
+		@Override public synchronized void execute(Runnable r) {
+			tasks.add(() -> {
+				try {
+					r.run();
+				} catch(RuntimeException e) {
+					LOG.log(Level.WARNING, "Serial task failed", e);
+				} finally {
+					runNext();
+				}
+			});
+			if(active == null) {
+				runNext();
+			}
+		}
+
+		private synchronized void runNext() {
+			active = tasks.poll();
+			if(active != null) {
+				WORKERS.execute(active);
+			}
+		}
+	}
+}
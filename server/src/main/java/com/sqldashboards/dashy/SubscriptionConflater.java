@@ -0,0 +1,189 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.kx.c;
+import com.sqldashboards.shared.ConnectionManager;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Limits how often a subscription publishes by coalescing every table that arrives within 
+ * one publish interval into a single table. The first update after a quiet period is published
+ * straight away, later ones wait until the interval has passed since the last publish.
+ * A burst of hundreds of updates a second then costs at most one serialization and send per interval.
+ * Batches are only concatenated when published so a burst costs each row one copy, not one per batch.
+ * Each shared subscription has one conflater whose tables are passed to all viewers, see {@link SubscriptionRegistry}.
+ */
+@ThreadSafe
+public class SubscriptionConflater {
+
+	private static final Logger LOG = Logger.getLogger(SubscriptionConflater.class.getName());
+	
+	public static enum Policy { 
+		/** Publish every row received in the interval, in order. */
+		APPEND, 
+		/** Publish only the last row received for each key, falls back to APPEND if the key columns are missing. */
+		MERGE_BY_KEY 
+	}
+	
+	private static volatile int defaultMaxPublishRate = 10;
+	private static volatile Policy defaultPolicy = Policy.APPEND;
+	private static volatile String[] defaultKeyCols = { "sym" };
+	
+	private final long intervalMs;
+	private final Policy policy;
+	private final String[] keyCols;
+	private final Consumer<c.Flip> publisher;
+	/** Runs delayed publishes off the shared timer thread, as publishing serializes and sends to every viewer. */
+	private final Executor publishExecutor = SharedScheduler.newSerialExecutor();
+	/** Held while taking and publishing the pending table so that publishes never overlap or reorder. */
+	private final Object publishLock = new Object();
+	// guarded by this
+	private ArrayDeque<c.Flip> pending = new ArrayDeque<>();
+	private int pendingRows = 0;
+	private boolean flushScheduled = false;
+	private long lastPublish = 0;
+	
+	/**
+	 * @param intervalMs Minimum time between publishes, 0 publishes every update immediately.
+	 * @param keyCols The columns identifying a row for {@link Policy#MERGE_BY_KEY}.
+	 * @param publisher Receives the coalesced tables, called on either the adding thread or a timer thread.
+	 */
+	public SubscriptionConflater(long intervalMs, Policy policy, String[] keyCols, Consumer<c.Flip> publisher) {
+		this.intervalMs = intervalMs;
+		this.policy = policy;
+		this.keyCols = keyCols;
+		this.publisher = publisher;
+	}
+	
+	/** @return A conflater using the defaults set by {@link #setDefaultMaxPublishRate(int)} and {@link #setDefaultPolicy(Policy, String[])}. */
+	public static SubscriptionConflater newDefault(Consumer<c.Flip> publisher) {
+		int hz = defaultMaxPublishRate;
+		return new SubscriptionConflater(hz <= 0 ? 0 : 1000 / hz, defaultPolicy, defaultKeyCols, publisher);
+	}
+	
+	/** @param maxPublishRate The maximum updates per second each subscription publishes, 0 or less for no limit. */
+	public static void setDefaultMaxPublishRate(int maxPublishRate) {
+		defaultMaxPublishRate = maxPublishRate;
+	}
+	
+	public static void setDefaultPolicy(Policy policy, String[] keyCols) {
+		defaultKeyCols = Objects.requireNonNull(keyCols);
+		defaultPolicy = Objects.requireNonNull(policy);
+	}
+	
+	/** Add one update, it will be published once the current interval has passed. */
+	public void add(c.Flip tbl) {
+		long delay;
+		synchronized(this) {
+			if(!pending.isEmpty() && !FlipHelper.sameSchema(pending.peekLast(), tbl)) {
+				// A changed schema can't be combined, the newer table wins.
+				pending.clear();
+				pendingRows = 0;
+			}
+			pending.add(tbl);
+			pendingRows += FlipHelper.count(tbl);
+			trim();
+			if(flushScheduled) {
+				return;
+			}
+			flushScheduled = true;
+			delay = lastPublish + intervalMs - System.currentTimeMillis();
+		}
+		if(delay <= 0) {
+			flush();
+		} else {
+			SharedScheduler.getInstance().schedule(() -> publishExecutor.execute(this::flush), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/** 
+	 * Bound the rows held until the next publish, as rows beyond what a result set can show would only be dropped later.
+	 * Whole batches that are too old are dropped, keyed batches are merged once they hold twice the rows shown
+	 * so that each row is copied a constant number of times on average.
+	 */
+	private void trim() {
+		int maxRows = ConnectionManager.MAX_ROWS;
+		if(isMerging(pending.peekLast())) {
+			if(pendingRows > 2 * maxRows) {
+				c.Flip merged = combine(pending);
+				pending.clear();
+				pending.add(merged);
+				pendingRows = FlipHelper.count(merged);
+			}
+		} else {
+			while(pending.size() > 1 && pendingRows - FlipHelper.count(pending.peekFirst()) >= maxRows) {
+				pendingRows -= FlipHelper.count(pending.removeFirst());
+			}
+		}
+	}
+	
+	private boolean isMerging(c.Flip tbl) {
+		return policy == Policy.MERGE_BY_KEY && FlipHelper.hasColumns(tbl, keyCols);
+	}
+	
+	/** @return All batches as one table, merged if keyed and no longer than a result set can show. */
+	private c.Flip combine(ArrayDeque<c.Flip> batches) {
+		return FlipHelper.tail(merge(FlipHelper.concat(batches)), ConnectionManager.MAX_ROWS);
+	}
+	
+	private c.Flip merge(c.Flip tbl) {
+		if(isMerging(tbl)) {
+			return FlipHelper.lastByKey(tbl, keyCols);
+		}
+		return tbl;
+	}
+	
+	private void flush() {
+		synchronized(publishLock) {
+			ArrayDeque<c.Flip> batches;
+			synchronized(this) {
+				batches = pending;
+				pending = new ArrayDeque<>();
+				pendingRows = 0;
+				flushScheduled = false;
+				lastPublish = System.currentTimeMillis();
+			}
+			if(!batches.isEmpty()) {
+				try {
+					publisher.accept(combine(batches));
+				} catch(RuntimeException e) {
+					LOG.log(Level.WARNING, "Error publishing subscription update", e);
+				}
+			}
+		}
+	}
+}
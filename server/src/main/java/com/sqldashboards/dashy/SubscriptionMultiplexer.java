@@ -0,0 +1,399 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Preconditions;
+import com.sqldashboards.shared.WorkerThreads;
+import com.kx.c;
+
+import lombok.Getter;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Owns the sockets of all kdb subscriptions, shared by all {@link QueryEngine2}s.
+ * A single selector thread reads whatever bytes are available on every socket and cuts them into
+ * whole IPC messages, these are then decoded and passed to their {@link SubscriptionListener} 
+ * on a small worker pool. Rather than one blocked thread per subscription, thread count stays 
+ * fixed no matter how many dashboards are subscribed.
+ * Messages for any one subscription are always delivered in order, one at a time.
+ */
+@ThreadSafe
+public class SubscriptionMultiplexer {
+
+	private static final Logger LOG = Logger.getLogger(SubscriptionMultiplexer.class.getName());
+	private static final SubscriptionMultiplexer INSTANCE = new SubscriptionMultiplexer();
+	/** Once this many messages are waiting to be decoded, reading from that socket pauses until they are. */
+	private static final int MAX_PENDING_MESSAGES = 64;
+	private static final int HEADER_SIZE = 8;
+	/** Queued after the last message of a failed subscription so the failure is reported after those messages. */
+	private static final byte[] END = new byte[0];
+	/** 
+	 * Bytes of decoded message buffers each subscription keeps to read later messages into rather than allocating.
+	 * Enough for a burst of small updates, larger messages are allocated each time.
+	 */
+	private static final int MAX_FREE_BYTES = 1024 * 1024;
+	
+	/** Number of threads decoding messages and notifying listeners, shared by all subscriptions. */
+	@Getter private volatile int workerThreads = 4;
+	private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+	private Selector selector;
+	private ExecutorService workers;
+	/** Connects and logs in, kept apart from the workers so a slow server can't delay other subscriptions' messages. */
+	private ExecutorService connectors;
+
+	public static SubscriptionMultiplexer getInstance() { return INSTANCE; }
+	
+	private SubscriptionMultiplexer() {}
+	
+	/** Receives the messages published on one subscription. */
+	public static interface SubscriptionListener {
+		/** A message was published by the server, called on a worker thread. */
+		void messageReceived(Object message);
+		/** A message could not be decoded, the subscription remains open. */
+		void messageError(Exception e);
+		/** 
+		 * The subscription will receive no further messages. 
+		 * @param e The reason the connection failed or null if it was closed by {@link Subscription#close()}.
+		 */
+		void subscriptionClosed(IOException e);
+	}
+	
+	/**
+	 * Set the number of threads used to decode messages and notify listeners.
+	 * Only takes effect if set before the first subscription is made.
+	 */
+	public void setWorkerThreads(int workerThreads) {
+		Preconditions.checkArgument(workerThreads > 0, "workerThreads must be positive");
+		this.workerThreads = workerThreads;
+	}
+	
+	/**
+	 * Connect using the connector, send the subscription query and start receiving its messages.
+	 * Connecting is done on a separate thread so this call returns straight away, 
+	 * any failure to connect is reported to {@link SubscriptionListener#subscriptionClosed(IOException)}.
+	 * @param connector Supplies a blocking channel that has already logged in to the kdb server.
+	 * @param query The query that starts the subscription, sent asynchronously. 
+	 */
+	public Subscription subscribe(Callable<SocketChannel> connector, String query, SubscriptionListener listener) {
+		ensureStarted();
+		Subscription sub = new Subscription(query, listener);
+		connectors.execute(() -> sub.connect(connector));
+		return sub;
+	}
+	
+	private synchronized void ensureStarted() {
+		if(selector != null) {
+			return;
+		}
+		try {
+			selector = Selector.open();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not open selector", e);
+		}
+		workers = Executors.newFixedThreadPool(workerThreads, WorkerThreads.newFactory("subscription-worker-"));
+		connectors = WorkerThreads.newCachedPool("subscription-connect-");
+		Thread t = new Thread(this::selectLoop, "subscription-selector");
+		t.setDaemon(true);
+		t.start();
+	}
+	
+	private void runOnSelector(Runnable task) {
+		selectorTasks.add(task);
+		selector.wakeup();
+	}
+	
+	private void selectLoop() {
+		try {
+			while(true) {
+				selector.select();
+				Runnable task;
+				while((task = selectorTasks.poll()) != null) {
+					task.run();
+				}
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					Subscription sub = (Subscription) key.attachment();
+					try {
+						if(key.isValid() && key.isReadable()) {
+							sub.read();
+						}
+					} catch (IOException e) {
+						sub.fail(e);
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			LOG.log(Level.SEVERE, "Subscription selector stopped", e);
+		}
+	}
+	
+	/** One subscription query and the socket its messages arrive on. */
+	public class Subscription implements Closeable {
+		
+		@Getter private final String query;
+		private final SubscriptionListener listener;
+		/** Only used to decode, holds no connection. */
+		private final c decoder = new c();
+		/** Whole messages waiting to be decoded, each array may be longer than the message it holds. */
+		private final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>();
+		private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(MAX_PENDING_MESSAGES);
+		private final AtomicInteger freeBytes = new AtomicInteger();
+		private final AtomicInteger pendingCount = new AtomicInteger();
+		private final AtomicBoolean draining = new AtomicBoolean();
+		private final AtomicBoolean closed = new AtomicBoolean();
+		/** Set once close is requested, any messages still queued are then dropped. */
+		private volatile boolean stopped = false;
+		private volatile IOException failure;
+		private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		/** The message currently being read, null while waiting for the next header. */
+		private ByteBuffer body;
+		private volatile SocketChannel channel;
+		private SelectionKey key;
+		
+		private Subscription(String query, SubscriptionListener listener) {
+			this.query = query;
+			this.listener = listener;
+		}
+		
+		private void connect(Callable<SocketChannel> connector) {
+			SocketChannel ch = null;
+			try {
+				ch = connector.call();
+				// sent as an async message while still blocking, as the query is small and only sent once.
+				ByteBuffer msg = ByteBuffer.wrap(new c().serialize(0, query.toCharArray(), false));
+				while(msg.hasRemaining()) {
+					ch.write(msg);
+				}
+				ch.configureBlocking(false);
+				channel = ch;
+			} catch(Exception e) {
+				closeQuietly(ch);
+				fail(e instanceof IOException ? (IOException) e : new IOException(e));
+				return;
+			}
+			runOnSelector(() -> {
+				if(closed.get()) {
+					closeQuietly(channel);
+					return;
+				}
+				try {
+					key = channel.register(selector, SelectionKey.OP_READ, this);
+				} catch (IOException e) {
+					fail(e);
+				}
+			});
+		}
+
+		/** Read all available bytes, queueing every whole message. Only called on the selector thread. */
+		private void read() throws IOException {
+			while(true) {
+				if(body == null) {
+					if(channel.read(header) < 0) {
+						throw new EOFException("Subscription closed by server");
+					}
+					if(header.hasRemaining()) {
+						return;
+					}
+					byte[] h = header.array();
+					boolean littleEndian = h[0] == 1;
+					int len = littleEndian 
+							? (h[4]&0xff) | (h[5]&0xff)<<8 | (h[6]&0xff)<<16 | (h[7]&0xff)<<24
+							: (h[7]&0xff) | (h[6]&0xff)<<8 | (h[5]&0xff)<<16 | (h[4]&0xff)<<24;
+					if(len < HEADER_SIZE) {
+						throw new IOException("Invalid message length: " + len);
+					}
+					byte[] msg = takeBuffer(len);
+					System.arraycopy(h, 0, msg, 0, HEADER_SIZE);
+					body = ByteBuffer.wrap(msg, 0, len);
+					body.position(HEADER_SIZE);
+					header.clear();
+				}
+				if(body.hasRemaining() && channel.read(body) < 0) {
+					throw new EOFException("Subscription closed by server");
+				}
+				if(body.hasRemaining()) {
+					return;
+				}
+				pending.add(body.array());
+				body = null;
+				if(pendingCount.incrementAndGet() >= MAX_PENDING_MESSAGES) {
+					key.interestOps(0);
+				}
+				scheduleDrain();
+				if(key.interestOps() == 0) {
+					return;
+				}
+			}
+		}
+		
+		/** @return A free buffer of at least len bytes if one is large enough, otherwise a new one. */
+		private byte[] takeBuffer(int len) {
+			byte[] b = freeBuffers.poll();
+			if(b != null) {
+				freeBytes.addAndGet(-b.length);
+				if(b.length >= len) {
+					return b;
+				}
+			}
+			// Rounded up like the decoder's own buffers so slowly growing messages don't need a new buffer each time.
+			int size = len <= 64 ? 64 : Integer.highestOneBit(len - 1) << 1;
+			return new byte[size > MAX_FREE_BYTES || size < len ? len : size];
+		}
+		
+		/** Keep a decoded message's buffer to read a later message into, unless the subscription already keeps enough. */
+		private void recycle(byte[] b) {
+			if(freeBytes.addAndGet(b.length) > MAX_FREE_BYTES || !freeBuffers.offer(b)) {
+				freeBytes.addAndGet(-b.length);
+			}
+		}
+		
+		private void scheduleDrain() {
+			if(draining.compareAndSet(false, true)) {
+				workers.execute(this::drain);
+			}
+		}
+		
+		/** Decode and deliver queued messages, only ever running on one worker at a time. */
+		private void drain() {
+			byte[] msg;
+			while((msg = pending.poll()) != null) {
+				if(msg == END) {
+					notifyClosed(failure);
+					continue;
+				}
+				if(pendingCount.getAndDecrement() == MAX_PENDING_MESSAGES) {
+					runOnSelector(() -> {
+						if(key != null && key.isValid()) {
+							key.interestOps(SelectionKey.OP_READ);
+						}
+					});
+				}
+				if(stopped) {
+					continue;
+				}
+				Object decoded;
+				try {
+					decoded = decoder.deserialize(msg);
+				} catch(Exception e) {
+					notifyError(e);
+					continue;
+				} finally {
+					recycle(msg); // decoding copies every value out of the buffer
+				}
+				try {
+					listener.messageReceived(decoded);
+				} catch(Exception e) {
+					notifyError(e);
+				}
+			}
+			draining.set(false);
+			// A message may have been queued after the last poll but before draining was cleared.
+			if(!pending.isEmpty()) {
+				scheduleDrain();
+			}
+		}
+		
+		/** Close the socket and report the failure once all messages already read have been delivered. */
+		private void fail(IOException e) {
+			if(closed.compareAndSet(false, true)) {
+				failure = e;
+				release();
+				pending.add(END);
+				scheduleDrain();
+			}
+		}
+
+		/** Stop receiving messages and close the socket, no further messages are delivered. */
+		@Override public void close() {
+			if(closed.compareAndSet(false, true)) {
+				stopped = true;
+				pending.clear();
+				release();
+				notifyClosed(null);
+			}
+		}
+		
+		private void notifyError(Exception e) {
+			try {
+				listener.messageError(e);
+			} catch(RuntimeException re) {
+				LOG.log(Level.WARNING, "Subscription listener failed", re);
+			}
+		}
+		
+		private void notifyClosed(IOException e) {
+			try {
+				listener.subscriptionClosed(e);
+			} catch(RuntimeException re) {
+				LOG.log(Level.WARNING, "Subscription listener failed", re);
+			}
+		}
+		
+		private void release() {
+			runOnSelector(() -> {
+				if(key != null) {
+					key.cancel();
+				}
+				closeQuietly(channel);
+			});
+		}
+		
+		public boolean isClosed() { return closed.get(); }
+	}
+	
+	private static void closeQuietly(SocketChannel ch) {
+		if(ch != null) {
+			try {
+				ch.close();
+			} catch (IOException e) {
+				LOG.fine("Error closing subscription socket: " + e);
+			}
+		}
+	}
+}
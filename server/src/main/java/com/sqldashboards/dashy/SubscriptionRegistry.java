@@ -0,0 +1,191 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.kx.c;
+import com.sqldashboards.dashy.SubscriptionMultiplexer.Subscription;
+import com.sqldashboards.dashy.SubscriptionMultiplexer.SubscriptionListener;
+import com.sqldashboards.shared.ConnectionManager;
+
+import lombok.Data;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Process wide registry of kdb subscriptions so that every {@link QueryEngine2} subscribing with 
+ * the same server config and translated query shares one upstream connection.
+ * The whole config including its name and credentials is part of the key, so a feed is only shared 
+ * between sessions that would have connected as the same user, and edits to a config start a new feed.
+ * Each message is decoded and conflated once, then passed to every listener, the connection is closed once its
+ * last listener leaves. Tickerplant load, decoding and conflation costs are then independent of the number of viewers.
+ */
+@ThreadSafe
+public class SubscriptionRegistry {
+
+	private static final Logger LOG = Logger.getLogger(SubscriptionRegistry.class.getName());
+	private static final SubscriptionRegistry INSTANCE = new SubscriptionRegistry();
+	
+	private final Object LOCK = new Object();
+	private final Map<Key, SharedSubscription> subscriptions = new ConcurrentHashMap<>();
+
+	public static SubscriptionRegistry getInstance() { return INSTANCE; }
+	
+	private SubscriptionRegistry() {}
+
+	@Data
+	private static class Key {
+		final ServerConfig serverConfig;
+		final String query;
+	}
+	
+	/** A listener's membership of a shared subscription, closing it stops updates to that listener only. */
+	public static interface Handle extends Closeable {
+		@Override void close();
+	}
+	
+	/**
+	 * Add a listener to the subscription for this server and query, connecting if no one else is subscribed.
+	 * The listener receives each table published by the subscription's {@link SubscriptionConflater} as a {@link c.Flip}, 
+	 * messages that aren't (`upd;`tablename;tbl) are reported as errors.
+	 * @return A handle that must be closed once the listener no longer wants updates.
+	 */
+	public Handle subscribe(ConnectionManager connMan, ServerConfig sc, String query, SubscriptionListener listener) {
+		Key key = new Key(sc, query);
+		synchronized(LOCK) {
+			SharedSubscription shared = subscriptions.get(key);
+			if(shared == null) {
+				shared = new SharedSubscription(key);
+				subscriptions.put(key, shared);
+				shared.listeners.add(listener);
+				shared.subscription = SubscriptionMultiplexer.getInstance().subscribe(() -> connMan.openKdbChannel(sc), query, shared);
+			} else {
+				shared.listeners.add(listener);
+			}
+			final SharedSubscription s = shared;
+			return () -> s.unsubscribe(listener);
+		}
+	}
+	
+	/** @return The number of distinct upstream subscriptions currently open. */
+	public int getSubscriptionCount() { return subscriptions.size(); }
+	
+	/** @return The number of listeners sharing the subscription or 0 if there is none. */
+	public int getListenerCount(ServerConfig sc, String query) {
+		SharedSubscription shared = subscriptions.get(new Key(sc, query));
+		return shared == null ? 0 : shared.listeners.size();
+	}
+	
+	/** One upstream subscription, forwarding each decoded message to all its listeners. */
+	private class SharedSubscription implements SubscriptionListener {
+		private final Key key;
+		private final List<SubscriptionListener> listeners = new CopyOnWriteArrayList<>();
+		private final SubscriptionConflater conflater = SubscriptionConflater.newDefault(this::publish);
+		private Subscription subscription;
+		
+		SharedSubscription(Key key) {
+			this.key = key;
+		}
+		
+		private void unsubscribe(SubscriptionListener listener) {
+			boolean last = false;
+			synchronized(LOCK) {
+				if(!listeners.remove(listener)) {
+					return;
+				}
+				if(listeners.isEmpty() && subscriptions.remove(key, this)) {
+					last = true;
+				}
+			}
+			notifyClosed(listener, null);
+			if(last) {
+				LOG.info("Closing shared subscription for query:" + key.getQuery());
+				subscription.close();
+			}
+		}
+		
+		@Override public void messageReceived(Object message) {
+			if(message == null) {
+				return;
+			}
+			Object[] data = message instanceof Object[] ? (Object[]) message : null;
+			if(data == null || data.length<3 || data[1] == null || !(data[2] instanceof c.Flip)) {
+				messageError(new IllegalStateException("Data from subscription wasn't (`upd;`tablename;tbl) format."));
+				return;
+			}
+			conflater.add((c.Flip) data[2]);
+		}
+		
+		private void publish(c.Flip tbl) {
+			for(SubscriptionListener l : listeners) {
+				try {
+					l.messageReceived(tbl);
+				} catch(RuntimeException e) {
+					LOG.log(Level.WARNING, "Subscription listener failed", e);
+				}
+			}
+		}
+
+		@Override public void messageError(Exception e) {
+			for(SubscriptionListener l : listeners) {
+				try {
+					l.messageError(e);
+				} catch(RuntimeException re) {
+					LOG.log(Level.WARNING, "Subscription listener failed", re);
+				}
+			}
+		}
+
+		@Override public void subscriptionClosed(IOException e) {
+			List<SubscriptionListener> remaining;
+			synchronized(LOCK) {
+				subscriptions.remove(key, this);
+				remaining = new ArrayList<>(listeners);
+				listeners.clear();
+			}
+			for(SubscriptionListener l : remaining) {
+				notifyClosed(l, e);
+			}
+		}
+	}
+	
+	private static void notifyClosed(SubscriptionListener listener, IOException e) {
+		try {
+			listener.subscriptionClosed(e);
+		} catch(RuntimeException re) {
+			LOG.log(Level.WARNING, "Subscription listener failed", re);
+		}
+	}
+}
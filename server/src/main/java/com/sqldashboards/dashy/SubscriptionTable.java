@@ -0,0 +1,257 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.dashy;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.kx.c;
+
+import lombok.Data;
+import lombok.Getter;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Bounded in-memory table built up from the batches received by one subscription.
+ * Each batch is appended, or if key columns are set, rows with an existing key replace that row in place.
+ * Once over the row limit the least recently added or updated rows are removed, as are rows older than the time window.
+ * Every {@link #apply(c.Flip)} returns the {@link TableDelta} from the previous version so that only the changes are sent.
+ * Each version is a new {@link c.Flip}, earlier versions handed to listeners never change underneath them.
+ */
+@ThreadSafe
+public class SubscriptionTable {
+
+	private static volatile int defaultMaxRows = 0;
+	private static volatile long defaultWindowMs = 0;
+	private static volatile String[] defaultKeyCols = {};
+	
+	private final int maxRows;
+	private final long windowMs;
+	private final String[] keyCols;
+	
+	@Getter private c.Flip table;
+	/** Time each row was last added or updated, in the same order as the table rows. */
+	private long[] rowTimes = new long[0];
+	/** Row index for each key, null if the table isn't keyed. */
+	private Map<Object,Integer> keyToRow;
+	@Getter private long version = 0;
+
+	/** The change between two versions of a table, in the same terms as the op list sent to clients. */
+	@Data
+	public static class TableDelta {
+		private final long fromVersion;
+		private final long toVersion;
+		/** If true the whole table was replaced and the change can't be described as row ops. */
+		private final boolean replaced;
+		/** Indices of rows removed from the previous version. */
+		private final int[] deleted;
+		/** Indices of rows replaced, counted after deletes and before appends. */
+		private final int[] updated;
+		/** Rows from this index onwards in the new version were appended. */
+		private final int appendFrom;
+		/** Number of rows in the new version. */
+		private final int rowCount;
+		
+		public int getChangeCount() { return deleted.length + updated.length + (rowCount - appendFrom); }
+		/** @return The number of rows in the previous version. */
+		public int getPreviousRowCount() { return appendFrom + deleted.length; }
+	}
+	
+	/**
+	 * @param maxRows The most rows kept, the oldest rows are removed first.
+	 * @param windowMs Rows not added or updated for this long are removed, 0 to keep rows regardless of age.
+	 * @param keyCols Columns identifying a row for upserts, empty to always append.
+	 */
+	public SubscriptionTable(int maxRows, long windowMs, String[] keyCols) {
+		this.maxRows = maxRows;
+		this.windowMs = windowMs;
+		this.keyCols = Objects.requireNonNull(keyCols);
+	}
+	
+	/** @return A table using the defaults set by {@link #setDefaults(int, long, String[])} or null if tables are disabled. */
+	public static SubscriptionTable newDefault() {
+		int maxRows = defaultMaxRows;
+		return maxRows <= 0 ? null : new SubscriptionTable(maxRows, defaultWindowMs, defaultKeyCols);
+	}
+	
+	/**
+	 * @param maxRows The most rows kept for each subscription, 0 or less to only show the latest batch.
+	 * @param windowMs Rows older than this are removed, 0 or less to keep rows regardless of age.
+	 */
+	public static void setDefaults(int maxRows, long windowMs, String[] keyCols) {
+		defaultKeyCols = Objects.requireNonNull(keyCols);
+		defaultWindowMs = Math.max(0, windowMs);
+		defaultMaxRows = maxRows;
+	}
+	
+	/**
+	 * Add a batch of rows to the table.
+	 * @return The change from the previous version, {@link TableDelta#isReplaced()} if for example the columns changed.
+	 */
+	public synchronized TableDelta apply(c.Flip batch) {
+		long now = System.currentTimeMillis();
+		long fromVersion = version++;
+		if(table == null || !FlipHelper.sameSchema(table, batch)) {
+			reset(batch, now);
+			return new TableDelta(fromVersion, version, true, new int[0], new int[0], 0, FlipHelper.count(table));
+		}
+		
+		int n = FlipHelper.count(table);
+		int m = FlipHelper.count(batch);
+		// For each output row, where it comes from. Previous rows keep their position, appends follow.
+		boolean[] fromBatch = new boolean[n + m];
+		int[] srcRow = new int[n + m];
+		long[] times = Arrays.copyOf(rowTimes, n + m);
+		for(int i=0; i<n; i++) {
+			srcRow[i] = i;
+		}
+		boolean keyed = keyToRow != null;
+		Object[] batchKeys = keyed ? keyColumns(batch) : null;
+		Map<Object,Integer> keys = keyed ? new HashMap<>(keyToRow) : null;
+		int rows = n;
+		for(int r=0; r<m; r++) {
+			Integer existing = keyed ? keys.get(FlipHelper.key(batchKeys, r)) : null;
+			int dest = existing != null ? existing : rows++;
+			if(existing == null && keyed) {
+				keys.put(FlipHelper.key(batchKeys, r), dest);
+			}
+			fromBatch[dest] = true;
+			srcRow[dest] = r;
+			times[dest] = now;
+		}
+		
+		// Remove expired rows then the oldest rows until within the limit.
+		boolean[] removed = new boolean[rows];
+		int kept = rows;
+		if(windowMs > 0) {
+			long cutoff = now - windowMs;
+			for(int i=0; i<rows; i++) {
+				if(times[i] < cutoff) {
+					removed[i] = true;
+					kept--;
+				}
+			}
+		}
+		if(kept > maxRows) {
+			// Least recently added or updated first, which is table order unless keyed rows were updated in place.
+			final long[] t = times;
+			Integer[] byAge = new Integer[kept];
+			for(int i=0, k=0; i<rows; i++) {
+				if(!removed[i]) {
+					byAge[k++] = i;
+				}
+			}
+			Arrays.sort(byAge, (x, y) -> t[x] != t[y] ? Long.compare(t[x], t[y]) : Integer.compare(x, y));
+			for(int k=0; kept > maxRows; k++) {
+				removed[byAge[k]] = true;
+				kept--;
+			}
+		}
+		
+		int[] deleted = new int[n];
+		int deletedCount = 0;
+		int[] updated = new int[n];
+		int updatedCount = 0;
+		int appendFrom = 0;
+		int[] outRows = new int[kept];
+		boolean[] outFromBatch = new boolean[kept];
+		long[] outTimes = new long[kept];
+		int j = 0;
+		for(int i=0; i<rows; i++) {
+			if(removed[i]) {
+				if(i < n) {
+					deleted[deletedCount++] = i;
+				}
+				continue;
+			}
+			if(i < n) {
+				appendFrom = j + 1;
+				if(fromBatch[i]) {
+					updated[updatedCount++] = j;
+				}
+			}
+			outRows[j] = srcRow[i];
+			outFromBatch[j] = fromBatch[i];
+			outTimes[j] = times[i];
+			j++;
+		}
+		
+		Object[] y = new Object[table.y.length];
+		for(int col=0; col<y.length; col++) {
+			Object prevCol = table.y[col];
+			Object batchCol = batch.y[col];
+			y[col] = Array.newInstance(prevCol.getClass().getComponentType(), kept);
+			for(int i=0; i<kept; i++) {
+				System.arraycopy(outFromBatch[i] ? batchCol : prevCol, outRows[i], y[col], i, 1);
+			}
+		}
+		table = new c.Flip(new c.Dict(table.x, y));
+		rowTimes = outTimes;
+		if(keyed) {
+			keyToRow = indexKeys(table);
+		}
+		return new TableDelta(fromVersion, version, false, Arrays.copyOf(deleted, deletedCount), 
+				Arrays.copyOf(updated, updatedCount), appendFrom, kept);
+	}
+	
+	private void reset(c.Flip batch, long now) {
+		c.Flip t = batch;
+		Map<Object,Integer> keys = null;
+		if(keyCols.length > 0 && FlipHelper.hasColumns(t, keyCols)) {
+			t = FlipHelper.lastByKey(t, keyCols);
+		}
+		t = FlipHelper.tail(t, maxRows);
+		if(keyCols.length > 0 && FlipHelper.hasColumns(t, keyCols)) {
+			keys = indexKeys(t);
+		}
+		table = t;
+		keyToRow = keys;
+		rowTimes = new long[FlipHelper.count(t)];
+		Arrays.fill(rowTimes, now);
+	}
+	
+	private Object[] keyColumns(c.Flip tbl) {
+		Object[] keys = new Object[keyCols.length];
+		for(int k=0; k<keyCols.length; k++) {
+			keys[k] = tbl.at(keyCols[k]);
+		}
+		return keys;
+	}
+	
+	private Map<Object,Integer> indexKeys(c.Flip tbl) {
+		Object[] keys = keyColumns(tbl);
+		int count = FlipHelper.count(tbl);
+		Map<Object,Integer> keyToRow = new HashMap<>(count * 2);
+		for(int r=0; r<count; r++) {
+			keyToRow.put(FlipHelper.key(keys, r), r);
+		}
+		return keyToRow;
+	}
+}
@@ -70,6 +70,7 @@ public class KdbConnection implements AutoCloseable {
 
 	public KdbConnection(ServerConfig sconf) throws KException, IOException {
 		this(sconf.getHost(), sconf.getPort(), sconf.getUsername(), sconf.getPassword());
+		c.zip(sconf.isCompress());
 	}
 
 
@@ -27,37 +27,46 @@
 package com.sqldashboards.shared;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.sql.rowset.CachedRowSet;
-import javax.sql.rowset.RowSetProvider;
-
 import org.apache.commons.dbcp2.ConnectionFactory;
 import org.apache.commons.dbcp2.PoolableConnection;
 import org.apache.commons.dbcp2.PoolableConnectionFactory;
 import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
+import com.google.common.base.Preconditions;
+import com.kx.c;
+import com.sqldashboards.dashy.ColumnarResultSet;
 import com.sqldashboards.dashy.DBHelper;
+import com.sqldashboards.dashy.FlipResultSet;
 import com.sqldashboards.dashy.ServerConfig;
 import com.sqldashboards.dashy.ServerConfigBuilder;
+import com.sqldashboards.dashy.SubscriptionMultiplexer;
 import com.sqldashboards.pro.KdbConnection;
 import com.sqldashboards.webby.Application;
 import com.timestored.kdb.QueryResult;
@@ -65,6 +74,7 @@ import com.timestored.kdb.QueryResultI;
 import com.timestored.plugins.ConnectionDetails;
 import com.timestored.plugins.DatabaseAuthenticationService;
 
+import kx.jdbc;
 import lombok.Getter;
 import lombok.Setter;
 import net.jcip.annotations.ThreadSafe;
@@ -82,15 +92,28 @@ public class ConnectionManager implements AutoCloseable {
 	public static String XML_ROOT = "serverlist";
 	private static final Logger LOG = Logger.getLogger(ConnectionManager.class.getName());
 	public static final int MAX_ROWS = 25_013;
+	/** Maximum time to connect and log in to a kdb server for a subscription, so an unreachable server fails rather than hangs. */
+	private static final int KDB_CHANNEL_TIMEOUT_MILLIS = 15_000;
+	/** Runs {@link #queryAsync(ServerConfig, String, QueryControl)} for databases that aren't pipelined. */
+	private static final ExecutorService ASYNC_EXECUTOR = WorkerThreads.newCachedPool("query-async-");
 
 	private final List<ServerConfig> serverConns;
 	private final Map<ServerConfig, ObjectPool<PoolableConnection>> serverConnPool;
 	private final Map<ServerConfig, Boolean> serverConnected = new ConcurrentHashMap<ServerConfig, Boolean>();
 	private final List<ServerConfig> readonlyServerConnections;
+	/** Only held while editing the server list, queries read the copy-on-write list and pools without locking. */
 	private final Object LOCK = new Object();
 	
 	@Getter private String defaultLoginUsername = null;
 	@Getter private String defaultLoginPassword = null;
+	/** Maximum connections open and maximum left idle in each server's pool. */
+	@Getter private volatile int poolMaxTotal = GenericObjectPoolConfig.DEFAULT_MAX_TOTAL;
+	@Getter private volatile int poolMaxIdle = GenericObjectPoolConfig.DEFAULT_MAX_IDLE;
+	/** Maximum time to wait for a connection when a server's pool is exhausted, negative waits forever. */
+	@Getter private volatile long poolMaxWaitMillis = 30_000;
+	/** Maximum queries sent on one kdb connection by {@link #queryAsync(ServerConfig, String, QueryControl)} before reading their responses. */
+	@Getter private volatile int pipelineDepth = 8;
+	private final Map<ServerConfig, KdbPipeline> pipelines = new ConcurrentHashMap<>();
 	
 
 	public void close() {
@@ -111,7 +134,7 @@ public class ConnectionManager implements AutoCloseable {
 
 	private ConnectionManager() {
 		
-		serverConnPool = new HashMap<ServerConfig, ObjectPool<PoolableConnection>>();
+		serverConnPool = new ConcurrentHashMap<ServerConfig, ObjectPool<PoolableConnection>>();
 		this.serverConns = new CopyOnWriteArrayList<ServerConfig>();
 		readonlyServerConnections = Collections.unmodifiableList(serverConns);
 	}
@@ -208,8 +231,11 @@ public class ConnectionManager implements AutoCloseable {
 		synchronized(LOCK) {
 			existingSC = getServer(oldServerName);
 			if(existingSC != null) {
-				serverConns.remove(existingSC);
-				serverConns.add(serverConnection);
+				// replaced in place so queries never see the server missing
+				serverConns.set(serverConns.indexOf(existingSC), serverConnection);
+				if(!existingSC.equals(serverConnection)) {
+					closePool(existingSC);
+				}
 			}
 		}
 		LOG.info("updated server: " + serverConnection.toString());
@@ -241,6 +267,7 @@ public class ConnectionManager implements AutoCloseable {
 				for(int i=0; i<serverConfigs.size(); i++) {
 					goners[i] = serverConns.remove(serverConfigs.get(i));
 					if(goners[i]) {
+						closePool(serverConfigs.get(i));
 						LOG.info("removed server: " + serverConfigs.toString());
 					}
 				}
@@ -261,6 +288,8 @@ public class ConnectionManager implements AutoCloseable {
 	public void removeServers() {
 		synchronized (LOCK) {
 			serverConns.clear();
+			close();
+			serverConnPool.clear();
 			LOG.info("removed all servers");
 		}
 	}
@@ -274,20 +303,75 @@ public class ConnectionManager implements AutoCloseable {
 	 * @throws IOException if problem connecting to server
 	 */
 	private PoolableConnection getConnection(ServerConfig serverConfig) throws IOException  {
-		synchronized (LOCK) {
-			if(serverConns.contains(serverConfig)) {
-				return getConn(serverConfig);
-			} 
+		return serverConns.contains(serverConfig) ? getConn(serverConfig) : null;
+	}
+
+	/**
+	 * Close and forget the pool for this server so that the next query creates a new pool using the latest settings.
+	 * Connections currently borrowed are closed when returned.
+	 */
+	private void closePool(ServerConfig serverConfig) {
+		pipelines.remove(serverConfig);
+		ObjectPool<PoolableConnection> op = serverConnPool.remove(serverConfig);
+		if(op != null) {
+			try {
+				op.close();
+			} catch (Exception e) {
+				LOG.log(Level.WARNING, "error closing pool for " + serverConfig.getName(), e);
+			}
 		}
-		return null;
+	}
+
+	/**
+	 * Set the maximum number of connections open and the maximum left idle for each server.
+	 * Applied to existing pools immediately as well as any created later.
+	 */
+	public void setPoolLimits(int maxTotal, int maxIdle) {
+		this.poolMaxTotal = maxTotal;
+		this.poolMaxIdle = maxIdle;
+		serverConnPool.values().forEach(op -> {
+			if(op instanceof GenericObjectPool) {
+				((GenericObjectPool<PoolableConnection>) op).setMaxTotal(maxTotal);
+				((GenericObjectPool<PoolableConnection>) op).setMaxIdle(maxIdle);
+			}
+		});
+	}
+
+	/**
+	 * Set the maximum time a query waits for a connection when all of a server's connections are in use,
+	 * after which it fails rather than queueing forever behind a slow or unreachable server.
+	 * @param maxWaitMillis Negative to wait forever.
+	 */
+	public void setPoolMaxWait(long maxWaitMillis) {
+		this.poolMaxWaitMillis = maxWaitMillis;
+		serverConnPool.values().forEach(op -> {
+			if(op instanceof GenericObjectPool) {
+				((GenericObjectPool<PoolableConnection>) op).setMaxWait(Duration.ofMillis(maxWaitMillis));
+			}
+		});
+	}
+
+	/** Set the maximum number of queries sent on one kdb connection before their responses are read. */
+	public void setPipelineDepth(int pipelineDepth) {
+		Preconditions.checkArgument(pipelineDepth > 0, "pipelineDepth must be positive");
+		this.pipelineDepth = pipelineDepth;
 	}
 
 	/** Return the connection to the pool */
 	private boolean returnConn(ServerConfig serverConfig, PoolableConnection conn, boolean invalidateConnection)  {
 		ObjectPool<PoolableConnection> sp = serverConnPool.get(serverConfig);
+		if(sp == null && conn != null) {
+			// Pool was closed while borrowed as the server was edited or removed.
+			try {
+				conn.reallyClose();
+			} catch (SQLException e) {
+				LOG.log(Level.WARNING, "error closing orphaned connection", e);
+			}
+			return false;
+		}
 		if(sp!=null && conn!=null) {
 			try {
-				if(conn.isClosed() || invalidateConnection) {
+				if(invalidateConnection || conn.isClosed()) {
 					sp.invalidateObject(conn);
 				} else {
 					sp.returnObject(conn);
@@ -300,20 +384,22 @@ public class ConnectionManager implements AutoCloseable {
 		return false;
 	}
 
-	/** get a connection but don't care if we know about it or not */
+	/** 
+	 * get a connection but don't care if we know about it or not.
+	 * Only this server's pool is touched, so a server that is slow to connect only delays its own queries.
+	 */
 	private PoolableConnection getConn(ServerConfig serverConfig) throws IOException {
 		try {
 			ObjectPool<PoolableConnection> connPool = serverConnPool.get(serverConfig);
 			
 			if(connPool == null) {
+				// authenticator may be remote so resolved before computeIfAbsent, a racing thread's pool wins.
 				ServerConfig sc = overrideServerConfig(serverConfig);
-				ConnectionFactory connectionFactory = new MyDriverManagerConnectionFactory(sc);
-				// I think this may be needed, to pool connections
-				@SuppressWarnings("unused")
-				PoolableConnectionFactory poolableConnectionFactory = new PoolableConnectionFactory(connectionFactory, null);
-				connPool = new GenericObjectPool<>(poolableConnectionFactory);
-				  
-				serverConnPool.put(serverConfig, connPool);
+				connPool = serverConnPool.computeIfAbsent(serverConfig, k -> newPool(sc));
+				if(!serverConns.contains(serverConfig)) {
+					closePool(serverConfig); // removed while the pool was being created
+					throw new IOException("Server removed: " + serverConfig.getName());
+				}
 			}
 
 			PoolableConnection c = connPool.borrowObject();
@@ -329,6 +415,19 @@ public class ConnectionManager implements AutoCloseable {
 		}
 	}
 
+	/** Creating the pool does not connect, connections are opened by borrowObject outside of any shared lock. */
+	private GenericObjectPool<PoolableConnection> newPool(ServerConfig sc) {
+		ConnectionFactory connectionFactory = new MyDriverManagerConnectionFactory(sc);
+		// I think this may be needed, to pool connections
+		@SuppressWarnings("unused")
+		PoolableConnectionFactory poolableConnectionFactory = new PoolableConnectionFactory(connectionFactory, null);
+		GenericObjectPool<PoolableConnection> gop = new GenericObjectPool<>(poolableConnectionFactory);
+		gop.setMaxTotal(poolMaxTotal);
+		gop.setMaxIdle(poolMaxIdle);
+		gop.setMaxWait(Duration.ofMillis(poolMaxWaitMillis));
+		return gop;
+	}
+
 	private ServerConfig overrideServerConfig(ServerConfig serverConfig) {
 		ServerConfig sc = serverConfig;
 		
@@ -359,11 +458,9 @@ public class ConnectionManager implements AutoCloseable {
 	public ServerConfig getServer(String serverName) {
 		Objects.requireNonNull(serverName);
 
-		synchronized(LOCK) {
-			for(ServerConfig sc : serverConns) {
-				if(sc.getName().equals(serverName)) {
-					return sc;
-				}
+		for(ServerConfig sc : serverConns) {
+			if(sc.getName().equals(serverName)) {
+				return sc;
 			}
 		}
 		return null;
@@ -402,6 +499,43 @@ public class ConnectionManager implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Open a socket to a kdb server and log in without wrapping it in a {@link c}, 
+	 * so that it can later be read without blocking by the {@link SubscriptionMultiplexer}.
+	 * Connecting and the login response each time out after {@link #KDB_CHANNEL_TIMEOUT_MILLIS}.
+	 * @return a connected blocking channel.
+	 */
+	public SocketChannel openKdbChannel(ServerConfig serverConfig) throws IOException {
+		if(!serverConfig.isKDB()) {
+			throw new IllegalStateException("openKdbChannel only works for kdb");
+		}
+		ServerConfig sc = overrideServerConfig(serverConfig);
+		SocketChannel ch = SocketChannel.open();
+		try {
+			ch.socket().connect(new InetSocketAddress(sc.getHost(), sc.getPort()), KDB_CHANNEL_TIMEOUT_MILLIS);
+			ch.socket().setTcpNoDelay(true);
+			ch.socket().setKeepAlive(true);
+			String login = Objects.toString(sc.getUsername(), "") + ":" + Objects.toString(sc.getPassword(), "") + "\3";
+			byte[] b = login.getBytes(StandardCharsets.ISO_8859_1);
+			ByteBuffer out = ByteBuffer.allocate(b.length + 1).put(b).put((byte) 0);
+			out.flip();
+			while(out.hasRemaining()) {
+				ch.write(out);
+			}
+			// Read through the socket's stream as channel reads ignore the socket timeout.
+			ch.socket().setSoTimeout(KDB_CHANNEL_TIMEOUT_MILLIS);
+			if(ch.socket().getInputStream().read() < 0) {
+				throw new IOException("access");
+			}
+			ch.socket().setSoTimeout(0);
+			return ch;
+		} catch (IOException e) {
+			ch.close();
+			throw new IOException("Could not connect to server: " + serverConfig.getHost() + ":" + serverConfig.getPort() 
+					+ "\r\n Exception: " + e.toString(), e);
+		}
+	}
+
 	public boolean isConnected(ServerConfig sc) {
 		if(sc != null) {
 			Boolean b = serverConnected.get(sc);
@@ -411,9 +545,7 @@ public class ConnectionManager implements AutoCloseable {
 	}
 
 	public boolean contains(ServerConfig serverConfig) {
-		synchronized (LOCK) {
-			return serverConns.contains(serverConfig);
-		}
+		return serverConns.contains(serverConfig);
 	}
 
 	/**
@@ -445,11 +577,19 @@ public class ConnectionManager implements AutoCloseable {
 
 
     public QueryResultI query(String serverName, String query) {
-    	return query(getServer(serverName), query, true);
+    	return query(getServer(serverName), query, true, null);
     }
 
     public QueryResultI query(ServerConfig sc, String query) {
-    	return query(sc, query, true);
+    	return query(sc, query, true, null);
+    }
+
+	/**
+	 * As {@link #query(ServerConfig, String)} but the query is cancelled if the control is cancelled or its deadline passes,
+	 * in which case the result holds {@link QueryControl#newCancelledException()}.
+	 */
+    public QueryResultI query(ServerConfig sc, String query, QueryControl control) {
+    	return query(sc, query, true, control);
     }
 
 	/**
@@ -458,18 +598,38 @@ public class ConnectionManager implements AutoCloseable {
 	 * 2. This causes the problem that queries using this call are NOT pooled.
 	 * 3. But how to get conn through connection pool AND to allow wrapping??
 	 */
-    private QueryResultI query(ServerConfig sc, String query, boolean queryWrapped) {
+    private QueryResultI query(ServerConfig sc, String query, boolean queryWrapped, QueryControl control) {
 		try {
 			if(sc.getJdbcType().isKDB() && queryWrapped && !sc.getHost().equalsIgnoreCase("mem")) {
 				return KdbConnection.queryKDBwithNewConn(sc, query, queryWrapped, MAX_ROWS);
 			} else {
-				return executeQuery(sc, query);
+				return control == null ? executeQuery(sc, query) : executeQuery(sc, query, control);
 			}
 		} catch(IOException | SQLException e) {
 			return QueryResult.exceptionResult(query, e);
 		}
     }
     
+	/** @return true if {@link #queryAsync(ServerConfig, String, QueryControl)} pipelines this server's queries rather than using a thread each. */
+	public boolean isPipelined(ServerConfig sc) {
+		return sc.getJdbcType().isKDB() && !sc.getHost().equalsIgnoreCase("mem");
+	}
+	
+	/**
+	 * Run the query without blocking the caller. For kdb, queries to the same server are queued and sent 
+	 * several at a time on each pooled connection before the responses are read, rather than one round trip per query.
+	 * Other databases run the query on a worker thread, which waits for a pooled connection as a blocking query would.
+	 * @param control If not null, the query is cancelled when it is or its deadline passes, 
+	 * 	the result then holds {@link QueryControl#newCancelledException()}.
+	 * @return Future that always completes with a result, including for errors, as {@link #query(ServerConfig, String)} does.
+	 */
+	public CompletableFuture<QueryResultI> queryAsync(ServerConfig sc, String query, QueryControl control) {
+		if(isPipelined(sc)) {
+			return pipelines.computeIfAbsent(sc, s -> new KdbPipeline(this, s)).submit(query, control);
+		}
+		return CompletableFuture.supplyAsync(() -> query(sc, query, true, control), ASYNC_EXECUTOR);
+	}
+
 	/**
 	 * Attempt to query a selected {@link ServerConfig} and return a cached result.
 	 * @return The query result if all successful otherwise null.
@@ -477,7 +637,23 @@ public class ConnectionManager implements AutoCloseable {
 	 * @throws IOException If there was a problem with the connection.
 	 */
 	public QueryResultI executeQuery(ServerConfig serverConfig, String sql) throws SQLException, IOException {
-		return useConn(serverConfig, (Connection conn) -> executeQuery(serverConfig, sql, conn));
+		QueryControl control = new QueryControl(serverConfig.getQueryTimeout() * 1000L);
+		try {
+			return executeQuery(serverConfig, sql, control);
+		} finally {
+			control.finish();
+		}
+	}
+
+	/**
+	 * Attempt to query a selected {@link ServerConfig}, the statement is cancelled when the control is.
+	 * @param control Created by the caller who must {@link QueryControl#finish()} it, 
+	 * 	the server's query timeout applies if shorter than the control's.
+	 * @throws SQLException If there was a problem with the sql or the query was cancelled.
+	 * @throws IOException If there was a problem with the connection.
+	 */
+	public QueryResultI executeQuery(ServerConfig serverConfig, String sql, QueryControl control) throws SQLException, IOException {
+		return useConn(serverConfig, control, (Connection conn) -> executeQuery(serverConfig, sql, conn, control));
 	}
 
 	
@@ -490,6 +666,11 @@ public class ConnectionManager implements AutoCloseable {
 	 * @throws IOException If there was a problem with the connection.
 	 */
 	<T> T useConn(ServerConfig serverConfig, CheckedFunction<Connection,T> f) throws IOException,SQLException {
+		return useConn(serverConfig, null, f);
+	}
+
+	/** @param control If not null and cancelled, the failed query is not retried and a kdb connection is discarded. */
+	private <T> T useConn(ServerConfig serverConfig, QueryControl control, CheckedFunction<Connection,T> f) throws IOException,SQLException {
 		PoolableConnection conn = getConnection(serverConfig);
 		if(conn == null) {
 			throw new IOException("Could not find server");
@@ -498,6 +679,11 @@ public class ConnectionManager implements AutoCloseable {
 		try {
 			return f.apply(conn);
 		} catch(SQLException sqe) {
+			if(control != null && control.isCancelled()) {
+				// Cancelling a kdb query closes its handle, the query must not be ran again.
+				kdbConnectionClosed = serverConfig.getJdbcType().isKDB();
+				throw sqe;
+			}
 			kdbConnectionClosed = serverConfig.getJdbcType().equals(JdbcTypes.KDB) && 
 					(sqe instanceof SQLException) && sqe.toString().contains("recv failed") || sqe.toString().contains("SOCKETERR");
 			// basically one level recursion retry as we know recv is remote handle closed. Some KDB systems close handles open for long periods.
@@ -526,15 +712,33 @@ public class ConnectionManager implements AutoCloseable {
 	 * @return The query result if all successful otherwise null.
 	 * @throws SQLException If there was a problem with the sql.
 	 */
-	private static QueryResultI executeQuery(ServerConfig serverConfig, String query, Connection conn) 
+	static QueryResultI executeQuery(ServerConfig serverConfig, String query, Connection conn) 
 			throws SQLException {
+		return executeQuery(serverConfig, query, conn, null);
+	}
 
-		boolean kdbPre = serverConfig.getJdbcType().isKDB() && !(query.startsWith("q)") || query.startsWith("s)"));
-	    String qry = (kdbPre ? "q)" : "") + query;
+	/**
+	 * Execute query with the statement's timeout set from the control, 
+	 * the statement is cancelled if the control is cancelled while it runs.
+	 * @param control If null, only the server's query timeout applies. 
+	 * @throws SQLException If there was a problem with the sql or the query was cancelled.
+	 */
+	static QueryResultI executeQuery(ServerConfig serverConfig, String query, Connection conn, QueryControl control) 
+			throws SQLException {
+
+	    String qry = withLanguagePrefix(serverConfig, query);
 	    
 		Statement st = null;
 		try {
 			st = conn.createStatement();
+			long timeoutMillis = serverConfig.getQueryTimeout() * 1000L;
+			if(control != null) {
+				timeoutMillis = QueryControl.shortest(control.getTimeoutMillis(), timeoutMillis);
+				if(!control.onCancel(st::cancel)) {
+					throw control.newCancelledException();
+				}
+			}
+			setQueryTimeout(serverConfig, st, timeoutMillis);
 //			try {
 //				st.setMaxRows(MAX_ROWS);
 //			} catch(SQLException e) {
@@ -546,14 +750,15 @@ public class ConnectionManager implements AutoCloseable {
 			ResultSet rs = null;
 			int statementCount = 0;
 			int updateCount = 0;
-		    CachedRowSet crs = null;
+		    ResultSet crs = null;
 			do {
 				ResultSet tempRs = st.getResultSet();
 				if(tempRs != null) {
 					rs = tempRs;
 				    if(rs != null) {
-				    	crs = RowSetProvider.newFactory().createCachedRowSet();
-				    	crs.populate(rs);
+				    	// kdb tables are kept as received rather than copied
+				    	c.Flip flip = rs instanceof jdbc.rs ? ((jdbc.rs) rs).getFlip() : null;
+				    	crs = flip != null ? new FlipResultSet(flip, Integer.MAX_VALUE) : ColumnarResultSet.populate(rs);
 				    }
 				}
 				updateCount += tempRs == null ? 0 : st.getUpdateCount();
@@ -564,15 +769,123 @@ public class ConnectionManager implements AutoCloseable {
 		    
 		    return QueryResult.successfulResult(query, null, crs, consoleView, exceededMaxSize);
 		} catch(SQLException sqe) {
+			if(control != null && control.isCancelled()) {
+				LOG.info("Cancelled sql:\r\n" + qry);
+				throw control.newCancelledException();
+			}
 			LOG.warning("Error running sql:\r\n" + qry);
 			throw sqe;
 		} finally {
+			if(control != null) {
+				control.clearCanceller();
+			}
 			try {
 				if(st != null) { st.close();}
 			} catch (SQLException e) {}
 		}
 	}
 
+	/** 
+	 * Ask the database to stop the statement itself after the timeout, rounded up to whole seconds as JDBC requires. 
+	 * Drivers that don't support it are still stopped by cancelling the statement at the deadline.
+	 */
+	private static void setQueryTimeout(ServerConfig serverConfig, Statement st, long timeoutMillis) {
+		if(timeoutMillis > 0) {
+			try {
+				st.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (timeoutMillis + 999) / 1000));
+			} catch(SQLException e) {
+				LOG.fine("setQueryTimeout not supported for " + serverConfig.getName());
+			}
+		}
+	}
+
+	/** @return The query prefixed with q) for kdb, unless it already names its language, so it's not ran as SQL. */
+	static String withLanguagePrefix(ServerConfig serverConfig, String query) {
+		boolean kdbPre = serverConfig.getJdbcType().isKDB() && !(query.startsWith("q)") || query.startsWith("s)"));
+	    return (kdbPre ? "q)" : "") + query;
+	}
+
+	/**
+	 * Run a query but leave its ResultSet open so rows are fetched from the database as they are read,
+	 * rather than all held in memory. No row limit is applied. The connection is borrowed until the result is closed.
+	 * @param fetchSize Hint of the number of rows the driver should fetch per round trip.
+	 * @throws SQLException If there was a problem with the sql or the query did not return a table.
+	 * @throws IOException If there was a problem with the connection.
+	 */
+	public StreamingResult openStream(ServerConfig serverConfig, String sql, int fetchSize) throws IOException, SQLException {
+		PoolableConnection conn = getConnection(serverConfig);
+		if(conn == null) {
+			throw new IOException("Could not find server");
+		}
+		Statement st = null;
+		boolean autoCommit = false;
+		try {
+			// PostgreSQL only fetches in batches when inside a transaction.
+			try {
+				autoCommit = conn.getAutoCommit();
+				if(autoCommit) {
+					conn.setAutoCommit(false);
+				}
+			} catch(SQLException e) {
+				autoCommit = false; // Not supported by some drivers e.g. kdb, fetch size may still work.
+			}
+			st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			setQueryTimeout(serverConfig, st, serverConfig.getQueryTimeout() * 1000L);
+			try {
+				st.setFetchSize(fetchSize);
+			} catch(SQLException e) {
+				LOG.fine("setFetchSize not supported for " + serverConfig.getName());
+			}
+			if(!st.execute(sql) || st.getResultSet() == null) {
+				throw new SQLException("Query did not return a table.");
+			}
+			return new StreamingResult(serverConfig, conn, st, st.getResultSet(), autoCommit);
+		} catch(SQLException | RuntimeException e) {
+			try {
+				if(st != null) { st.close(); }
+			} catch (SQLException e2) {}
+			returnConn(serverConfig, conn, true);
+			throw e;
+		}
+	}
+	
+	/** An open query result from {@link #openStream(ServerConfig, String, int)}, must be closed to return its connection. */
+	public class StreamingResult implements AutoCloseable {
+		private final ServerConfig serverConfig;
+		private final PoolableConnection conn;
+		private final Statement st;
+		@Getter private final ResultSet rs;
+		private final boolean restoreAutoCommit;
+		private boolean closed = false;
+		
+		private StreamingResult(ServerConfig serverConfig, PoolableConnection conn, Statement st, ResultSet rs, boolean restoreAutoCommit) {
+			this.serverConfig = serverConfig;
+			this.conn = conn;
+			this.st = st;
+			this.rs = rs;
+			this.restoreAutoCommit = restoreAutoCommit;
+		}
+		
+		@Override public synchronized void close() {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			boolean invalidate = false;
+			try {
+				rs.close();
+				st.close();
+				if(restoreAutoCommit) {
+					conn.rollback(); // read only, ends the transaction started for fetching
+					conn.setAutoCommit(true);
+				}
+			} catch (SQLException e) {
+				invalidate = true;
+			}
+			returnConn(serverConfig, conn, invalidate);
+		}
+	}
+
 	public boolean isEmpty() { return serverConns.size()==0; }
 
 	/**
@@ -606,6 +919,9 @@ public class ConnectionManager implements AutoCloseable {
 				Properties p = new Properties();
 				p.setProperty("user", sc.getUsername());
 				p.setProperty("password", sc.getPassword());
+				if(sc.isKDB()) {
+					p.setProperty("compress", Boolean.toString(sc.isCompress()));
+				}
 				return ((Driver) driver.newInstance()).connect(sc.getUrl(), p);
 			} catch (InstantiationException | IllegalAccessException | SQLException | ClassNotFoundException e) {
 				// TODO Auto-generated catch block
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.shared;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.dbcp2.DelegatingConnection;
+
+import com.kx.c;
+import com.sqldashboards.dashy.FlipResultSet;
+import com.sqldashboards.dashy.ServerConfig;
+import com.timestored.kdb.QueryResult;
+import com.timestored.kdb.QueryResultI;
+
+import kx.jdbc;
+import lombok.Data;
+
+/**
+ * Queue of queries for one kdb server, run by sending several on a pooled connection 
+ * before reading any responses, rather than waiting for each response before sending the next query. 
+ * A refresh issuing many small queries to the same server then needs a couple of connections 
+ * and round trips rather than one per query.
+ */
+class KdbPipeline {
+
+	private static final Logger LOG = Logger.getLogger(KdbPipeline.class.getName());
+	private static final ExecutorService EXECUTOR;
+	
+	static {
+		// Pool size is bounded by each pipeline's connection limit.
+		EXECUTOR = WorkerThreads.newCachedPool("kdb-pipeline-");
+	}
+	
+	private final ConnectionManager connMan;
+	private final ServerConfig serverConfig;
+	private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+	/** Number of connections currently sending queued queries. */
+	private final AtomicInteger running = new AtomicInteger();
+	
+	@Data
+	private static class Request {
+		private final String query;
+		private final QueryControl control;
+		private final CompletableFuture<QueryResultI> future = new CompletableFuture<>();
+		/** The connection this was sent on while awaiting its response, null when queued. */
+		private volatile jdbc.co sentOn;
+		
+		boolean isCancelled() { return control != null && control.isCancelled(); }
+	}
+	
+	KdbPipeline(ConnectionManager connMan, ServerConfig serverConfig) {
+		this.connMan = connMan;
+		this.serverConfig = serverConfig;
+	}
+	
+	/** 
+	 * @param control If not null, cancelling it completes the future with {@link QueryControl#newCancelledException()}.
+	 * 	A query that was already sent has its connection closed, other queries sent with it are then queued again.
+	 */
+	CompletableFuture<QueryResultI> submit(String query, QueryControl control) {
+		Request r = new Request(query, control);
+		if(control != null && !control.onCancel(() -> cancel(r))) {
+			r.future.complete(QueryResult.exceptionResult(query, control.newCancelledException()));
+			return r.future;
+		}
+		queue.add(r);
+		int depth = connMan.getPipelineDepth();
+		int maxConnections = Math.max(1, connMan.getPoolMaxTotal());
+		// Only use another connection when there is more than one batch waiting.
+		while(true) {
+			int n = running.get();
+			if(n >= maxConnections || (n > 0 && queue.size() <= depth * n)) {
+				break;
+			}
+			if(running.compareAndSet(n, n + 1)) {
+				EXECUTOR.execute(this::drain);
+				break;
+			}
+		}
+		return r.future;
+	}
+	
+	private void drain() {
+		while(true) {
+			int depth = connMan.getPipelineDepth();
+			List<Request> batch = new ArrayList<>(depth);
+			Request r;
+			while(batch.size() < depth && (r = queue.poll()) != null) {
+				if(!r.future.isDone()) { // skip those cancelled while queued
+					batch.add(r);
+				}
+			}
+			if(batch.isEmpty()) {
+				running.decrementAndGet();
+				// A request queued after the last poll but before the decrement would otherwise wait for the next submit.
+				if(queue.isEmpty() || !running.compareAndSet(0, 1)) {
+					return;
+				}
+				continue;
+			}
+			run(batch);
+		}
+	}
+	
+	private void cancel(Request r) {
+		if(r.future.complete(QueryResult.exceptionResult(r.query, r.control.newCancelledException()))) {
+			// Queued requests are skipped when polled, a sent one is stopped as a blocking query is, by closing its handle.
+			jdbc.co co = r.sentOn;
+			if(co != null) {
+				try {
+					co.close();
+				} catch (SQLException e) {
+					LOG.log(Level.FINE, "Error closing cancelled pipelined connection", e);
+				}
+			}
+		}
+	}
+	
+	private void run(List<Request> batch) {
+		try {
+			connMan.useConn(serverConfig, (Connection conn) -> {
+				// useConn retries once on a closed handle, only resend what hasn't completed.
+				List<Request> todo = new ArrayList<>(batch.size());
+				for(Request r : batch) {
+					if(!r.future.isDone()) {
+						todo.add(r);
+					}
+				}
+				if(todo.isEmpty()) {
+					return null;
+				}
+				Connection inner = conn instanceof DelegatingConnection ? ((DelegatingConnection<?>) conn).getInnermostDelegate() : conn;
+				if(!(inner instanceof jdbc.co)) {
+					for(Request r : todo) {
+						if(!r.future.isDone()) {
+							r.future.complete(ConnectionManager.executeQuery(serverConfig, r.query, conn, r.control));
+						}
+					}
+					return null;
+				}
+				jdbc.co co = (jdbc.co) inner;
+				List<CompletableFuture<Object>> responses = new ArrayList<>(todo.size());
+				try {
+					for(Request r : todo) {
+						r.sentOn = co;
+						responses.add(co.exAsync(ConnectionManager.withLanguagePrefix(serverConfig, r.query), 0));
+					}
+					// Cancelled while sending, its handle may have been closed before sentOn was seen.
+					if(todo.stream().anyMatch(Request::isCancelled)) {
+						co.close();
+					}
+				} finally {
+					try {
+						// Always read whatever was sent so the connection is left with nothing outstanding.
+						co.readPipelined();
+					} finally {
+						todo.forEach(r -> r.sentOn = null);
+					}
+				}
+				for(int i=0; i<todo.size(); i++) {
+					complete(todo.get(i), responses.get(i));
+				}
+				return null;
+			});
+		} catch (IOException | SQLException | RuntimeException e) {
+			LOG.log(Level.FINE, "Pipelined queries failed for " + serverConfig.getName(), e);
+			// A cancelled query closed the connection, the others sent with it weren't at fault so run them again.
+			boolean requeue = batch.stream().anyMatch(Request::isCancelled);
+			for(Request r : batch) {
+				if(r.isCancelled()) {
+					r.future.complete(QueryResult.exceptionResult(r.query, r.control.newCancelledException()));
+				} else if(requeue && !r.future.isDone()) {
+					queue.add(r);
+				} else {
+					r.future.complete(QueryResult.exceptionResult(r.query, e));
+				}
+			}
+		}
+	}
+	
+	private static void complete(Request r, CompletableFuture<Object> response) {
+		try {
+			Object k = response.join();
+			FlipResultSet rs = k instanceof c.Flip ? new FlipResultSet((c.Flip) k, Integer.MAX_VALUE) : null;
+			boolean exceededMaxSize = rs != null && rs.getRowCount() == ConnectionManager.MAX_ROWS;
+			r.future.complete(QueryResult.successfulResult(r.query, null, rs, "1 statements ran.\n", exceededMaxSize));
+		} catch (RuntimeException | SQLException e) {
+			Throwable cause = e.getCause() instanceof SQLException ? e.getCause() : e;
+			r.future.complete(QueryResult.exceptionResult(r.query, (Exception) cause));
+		}
+	}
+}
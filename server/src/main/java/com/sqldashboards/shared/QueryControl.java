@@ -0,0 +1,161 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.shared;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import lombok.Getter;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The deadline of one query run and the means to cancel it early. 
+ * The thread running the query registers how to stop it, e.g. cancelling its JDBC statement, 
+ * any other thread may then {@link #cancel()} it as a shared timer does once the deadline passes.
+ */
+@ThreadSafe
+public class QueryControl {
+
+	private static final Logger LOG = Logger.getLogger(QueryControl.class.getName());
+	private static final ScheduledThreadPoolExecutor TIMER;
+	
+	static {
+		TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "query-deadline");
+			t.setDaemon(true);
+			return t;
+		});
+		TIMER.setRemoveOnCancelPolicy(true); // most queries finish long before their deadline
+	}
+	
+	/** Stops a running query, called from a thread other than the one running it. */
+	@FunctionalInterface
+	public static interface Canceller {
+		void cancel() throws Exception;
+	}
+	
+	/** Milliseconds the query may run for, 0 means no deadline. */
+	@Getter private final long timeoutMillis;
+	private final ScheduledFuture<?> deadline;
+	private volatile boolean cancelled = false;
+	private volatile boolean timedOut = false;
+	// guarded by this
+	private boolean finished = false;
+	private Canceller canceller;
+
+	/** @param timeoutMillis Cancel the query if it is still running after this many milliseconds, 0 for no deadline. */
+	public QueryControl(long timeoutMillis) {
+		this.timeoutMillis = Math.max(0, timeoutMillis);
+		this.deadline = this.timeoutMillis > 0 ? TIMER.schedule(this::timeout, this.timeoutMillis, TimeUnit.MILLISECONDS) : null;
+	}
+	
+	/** @return The shorter of two timeouts where 0 means no timeout. */
+	public static long shortest(long timeoutMillis, long otherTimeoutMillis) {
+		if(timeoutMillis <= 0) {
+			return Math.max(0, otherTimeoutMillis);
+		}
+		return otherTimeoutMillis <= 0 ? timeoutMillis : Math.min(timeoutMillis, otherTimeoutMillis);
+	}
+	
+	/**
+	 * Set how to stop the query, replacing any previous canceller.
+	 * @return false if already cancelled, in which case the query should not be started.
+	 */
+	public synchronized boolean onCancel(Canceller canceller) {
+		if(cancelled) {
+			return false;
+		}
+		this.canceller = canceller;
+		return true;
+	}
+
+	/** Remove the canceller, e.g. once the statement it cancels is closed. */
+	public synchronized void clearCanceller() { canceller = null; }
+	
+	/** Stop the query if it's still running, later calls to {@link #onCancel(Canceller)} return false. */
+	public void cancel() {
+		Canceller c;
+		synchronized (this) {
+			if(cancelled || finished) {
+				return;
+			}
+			cancelled = true;
+			c = canceller;
+			canceller = null;
+		}
+		if(deadline != null) {
+			deadline.cancel(false);
+		}
+		if(c != null) {
+			try {
+				c.cancel();
+			} catch(Exception e) {
+				LOG.log(Level.WARNING, "Error cancelling query", e);
+			}
+		}
+	}
+	
+	private void timeout() {
+		synchronized (this) {
+			if(cancelled || finished) {
+				return;
+			}
+			timedOut = true;
+		}
+		LOG.info("Cancelling query that exceeded its deadline of " + timeoutMillis + " ms");
+		cancel();
+	}
+	
+	/** Mark the query as finished so that it can no longer be cancelled and release its deadline. */
+	public void finish() {
+		synchronized (this) {
+			finished = true;
+			canceller = null;
+		}
+		if(deadline != null) {
+			deadline.cancel(false);
+		}
+	}
+	
+	public boolean isCancelled() { return cancelled; }
+	
+	/** @return true if cancelled because the deadline passed rather than by a call to {@link #cancel()}. */
+	public boolean isTimedOut() { return timedOut; }
+	
+	/** @return The exception to report for a cancelled query, {@link SQLTimeoutException} if its deadline passed. */
+	public SQLException newCancelledException() {
+		if(timedOut) {
+			return new SQLTimeoutException("Query cancelled as it exceeded its deadline of " + timeoutMillis + " ms.");
+		}
+		return new SQLException("Query cancelled.");
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.shared;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Creates the threads that run blocking work such as JDBC queries and kdb subscription reads.
+ * These are platform threads unless virtual threads are enabled while running on JDK 21+.
+ * A virtual thread blocked on a query releases its carrier thread, thousands of slow queries 
+ * then need thousands of cheap virtual threads rather than OS threads. 
+ * Concurrency must be limited by semaphores or connection pools rather than by pool sizes.
+ * As the build targets Java 8 the JDK 21 API is found by reflection.
+ */
+@ThreadSafe
+public class WorkerThreads {
+
+	private static final Logger LOG = Logger.getLogger(WorkerThreads.class.getName());
+	/** Thread.ofVirtual() or null if not supported by this JVM. */
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+	private static volatile boolean virtual = false;
+	
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+		} catch (ReflectiveOperationException e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_FACTORY = factory;
+	}
+	
+	private WorkerThreads() {}
+
+	/** @return true if this JVM supports virtual threads. */
+	public static boolean isVirtualSupported() { return OF_VIRTUAL != null; }
+
+	/** @return true if threads created from now on are virtual. */
+	public static boolean isVirtual() { return virtual; }
+	
+	/**
+	 * Use virtual threads for blocking work if supported, otherwise platform threads continue to be used.
+	 * Applies to threads created after this call, including those of executors that already exist.
+	 * @return true if virtual threads are now used.
+	 */
+	public static boolean setVirtual(boolean useVirtual) {
+		if(useVirtual && !isVirtualSupported()) {
+			LOG.warning("Virtual threads requested but need JDK 21+, running on " + System.getProperty("java.version") + ". Using platform threads.");
+		}
+		virtual = useVirtual && isVirtualSupported();
+		LOG.info("Worker threads are " + (virtual ? "virtual" : "platform"));
+		return virtual;
+	}
+	
+	/**
+	 * @param namePrefix Threads are named this followed by a counter.
+	 * @return Factory of daemon threads that are virtual if enabled at the time each thread is created. 
+	 */
+	public static ThreadFactory newFactory(String namePrefix) {
+		final AtomicInteger threadNum = new AtomicInteger();
+		final ThreadFactory virtualFactory = isVirtualSupported() ? newVirtualFactory(namePrefix) : null;
+		return r -> {
+			if(virtual && virtualFactory != null) {
+				return virtualFactory.newThread(r);
+			}
+			Thread t = new Thread(r, namePrefix + threadNum.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+	
+	/**
+	 * @return Executor that creates threads as needed and reuses idle ones, the number of tasks 
+	 * submitted must be bounded by the caller e.g. by a semaphore.
+	 */
+	public static ExecutorService newCachedPool(String namePrefix) {
+		return Executors.newCachedThreadPool(newFactory(namePrefix));
+	}
+	
+	private static ThreadFactory newVirtualFactory(String namePrefix) {
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = BUILDER_NAME.invoke(builder, namePrefix, 1L);
+			return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.log(Level.WARNING, "Could not create virtual thread factory, using platform threads.", e);
+			return null;
+		}
+	}
+}
@@ -38,11 +38,17 @@ import java.nio.file.Paths;
 import org.fusesource.jansi.AnsiConsole;
 import org.slf4j.LoggerFactory;
 
+import com.sqldashboards.dashy.QueryDispatcher;
+import com.sqldashboards.dashy.SharedQueryCache;
+import com.sqldashboards.dashy.SubscriptionConflater;
+import com.sqldashboards.dashy.SubscriptionMultiplexer;
+import com.sqldashboards.dashy.SubscriptionTable;
 import com.sqldashboards.lic.PLicenser;
 import com.sqldashboards.pro.DashDemos;
 import com.sqldashboards.pro.DbDemo;
 import com.sqldashboards.pro.KdbHelper;
 import com.sqldashboards.shared.ConnectionManager;
+import com.sqldashboards.shared.WorkerThreads;
 import com.sqldashboards.shared.JdbcTypes;
 
 import ch.qos.logback.classic.LoggerContext;
@@ -395,6 +401,19 @@ class DataLoader implements ApplicationEventListener<ServerStartupEvent> {
         for(ServerConfigDTO sc : serverConfigRepository.findAll()) {
         	Application.CONNMAN.addServer(sc.toDashySC());
         }		
+        WorkerThreads.setVirtual(Application.CONFIG.isQuery_virtual_threads());
+        QueryDispatcher.getInstance().setMaxInFlightPerServer(Application.CONFIG.getQuery_max_inflight_per_server());
+        SharedQueryCache.getInstance().setEnabled(Application.CONFIG.isQuery_result_cache());
+        Application.CONNMAN.setPoolLimits(Application.CONFIG.getPool_max_total_per_server(), Application.CONFIG.getPool_max_idle_per_server());
+        Application.CONNMAN.setPoolMaxWait(Application.CONFIG.getPool_max_wait_seconds() * 1000L);
+        Application.CONNMAN.setPipelineDepth(Application.CONFIG.getPool_pipeline_depth());
+        SubscriptionMultiplexer.getInstance().setWorkerThreads(Application.CONFIG.getSubscription_worker_threads());
+        SubscriptionConflater.setDefaultMaxPublishRate(Application.CONFIG.getSubscription_max_publish_hz());
+        SubscriptionConflater.setDefaultPolicy(SubscriptionConflater.Policy.valueOf(Application.CONFIG.getSubscription_conflation().trim().toUpperCase()), 
+        		Application.CONFIG.getSubscription_conflation_key().trim().split("\\s*,\\s*"));
+        String tableKeys = Application.CONFIG.getSubscription_table_keys().trim();
+        SubscriptionTable.setDefaults(Application.CONFIG.getSubscription_table_max_rows(), Application.CONFIG.getSubscription_table_window_seconds() * 1000L, 
+        		tableKeys.isEmpty() ? new String[0] : tableKeys.split("\\s*,\\s*"));
 
         if(Application.CONFIG.isDemo_rundb()) {
     		System.out.print(".");
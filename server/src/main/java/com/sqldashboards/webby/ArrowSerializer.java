@@ -0,0 +1,377 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.webby;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import com.kx.c;
+import com.sqldashboards.dashy.FlipResultSet;
+import com.timestored.kdb.QueryResultI;
+
+/**
+ * Converts query results to the Apache Arrow IPC stream format, the binary alternative to {@link ResultSetSerializer}.
+ * Numeric, boolean and temporal columns are copied as typed primitives without formatting each cell as text.
+ * Temporal columns are sent as UTC milliseconds, the same values the JSON format sends.
+ * Whether the max row limit was exceeded and any caller supplied values are sent as schema metadata.
+ */
+public class ArrowSerializer {
+
+	public static final String MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+	private static final int BATCH_ROWS = 16_384;
+	private static final BufferAllocator ROOT_ALLOCATOR = new RootAllocator();
+	
+	/** Copies one value from the source row into position idx of its vector. */
+	@FunctionalInterface
+	private static interface CellWriter {
+		void write(int srcRow, int idx) throws SQLException;
+	}
+
+	/** @return The rows of qr, from the ResultSet if present, else from a kdb table. */
+	public byte[] toBytes(QueryResultI qr, Map<String,String> metadata) throws IOException, SQLException {
+		if(qr.getRs() != null) {
+			return toBytes(qr.getRs(), qr.isExceededMax(), metadata);
+		} else if(qr.getK() instanceof c.Flip) {
+			return toBytes((c.Flip) qr.getK(), qr.isExceededMax(), metadata);
+		}
+		throw new IOException(qr.getE() != null ? qr.getE().getLocalizedMessage() : "Result was not a table");
+	}
+
+	public byte[] toBytes(ResultSet rs, boolean exceededMaxRows, Map<String,String> metadata) throws IOException, SQLException {
+		if(rs instanceof FlipResultSet) {
+			FlipResultSet frs = (FlipResultSet) rs;
+			return toBytes(frs.getFlip(), frs.getRowCount(), exceededMaxRows, metadata);
+		}
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int cols = rsmd.getColumnCount();
+		int[] columnTypes = new int[cols];
+		List<Field> fields = new ArrayList<>(cols);
+		for(int i = 0; i < cols; i++) {
+			columnTypes[i] = rsmd.getColumnType(i + 1);
+			fields.add(Field.nullable(rsmd.getColumnLabel(i + 1), toArrowType(columnTypes[i])));
+		}
+		
+		try(BufferAllocator allocator = ROOT_ALLOCATOR.newChildAllocator("ArrowSerializer", 0, Long.MAX_VALUE);
+			VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields, toMetadata(exceededMaxRows, metadata)), allocator)) {
+			
+			CellWriter[] writers = new CellWriter[cols];
+			for(int i = 0; i < cols; i++) {
+				writers[i] = cellWriter(rs, i + 1, columnTypes[i], root.getVector(i));
+			}
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+			try(ArrowStreamWriter writer = new ArrowStreamWriter(root, null, Channels.newChannel(baos))) {
+				writer.start();
+				int idx = 0;
+				int rows = 0;
+				rs.beforeFirst();
+				while(rs.next()) {
+					for(CellWriter cw : writers) {
+						cw.write(rows, idx);
+					}
+					rows++;
+					if(++idx == BATCH_ROWS) {
+						writeBatch(writer, root, idx);
+						idx = 0;
+					}
+				}
+				if(idx > 0 || rows == 0) { // always send one batch so that empty tables have a row count
+					writeBatch(writer, root, idx);
+				}
+				writer.end();
+			}
+			return baos.toByteArray();
+		}
+	}
+
+	public byte[] toBytes(c.Flip flip, boolean exceededMaxRows, Map<String,String> metadata) throws IOException, SQLException {
+		return toBytes(flip, Integer.MAX_VALUE, exceededMaxRows, metadata);
+	}
+
+	private byte[] toBytes(c.Flip flip, int maxRows, boolean exceededMaxRows, Map<String,String> metadata) throws IOException, SQLException {
+		int cols = flip.x.length;
+		int rows = cols == 0 ? 0 : Math.min(maxRows, Array.getLength(flip.y[0]));
+		List<Field> fields = new ArrayList<>(cols);
+		for(int i = 0; i < cols; i++) {
+			fields.add(Field.nullable(flip.x[i], toArrowType(flip.y[i])));
+		}
+		
+		try(BufferAllocator allocator = ROOT_ALLOCATOR.newChildAllocator("ArrowSerializer", 0, Long.MAX_VALUE);
+			VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields, toMetadata(exceededMaxRows, metadata)), allocator)) {
+			
+			CellWriter[] writers = new CellWriter[cols];
+			for(int i = 0; i < cols; i++) {
+				writers[i] = cellWriter(flip.y[i], root.getVector(i));
+			}
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+			try(ArrowStreamWriter writer = new ArrowStreamWriter(root, null, Channels.newChannel(baos))) {
+				writer.start();
+				int row = 0;
+				do {
+					int batchRows = Math.min(BATCH_ROWS, rows - row);
+					for(int idx = 0; idx < batchRows; idx++) {
+						for(CellWriter cw : writers) {
+							cw.write(row + idx, idx);
+						}
+					}
+					writeBatch(writer, root, batchRows);
+					row += batchRows;
+				} while(row < rows);
+				writer.end();
+			}
+			return baos.toByteArray();
+		}
+	}
+
+	private static void writeBatch(ArrowStreamWriter writer, VectorSchemaRoot root, int rows) throws IOException {
+		for(FieldVector fv : root.getFieldVectors()) {
+			fv.setValueCount(rows);
+		}
+		root.setRowCount(rows);
+		writer.writeBatch();
+		for(FieldVector fv : root.getFieldVectors()) {
+			fv.reset();
+		}
+	}
+
+	private static Map<String,String> toMetadata(boolean exceededMaxRows, Map<String,String> metadata) {
+		Map<String,String> m = metadata == null ? new HashMap<>() : new HashMap<>(metadata);
+		if(exceededMaxRows) {
+			m.put("exceededMaxRows", "true");
+		}
+		return m;
+	}
+	
+	private static ArrowType toArrowType(int sqlType) {
+		switch(sqlType) {
+		case Types.TINYINT: return new ArrowType.Int(8, true);
+		case Types.SMALLINT: return new ArrowType.Int(16, true);
+		case Types.INTEGER: return new ArrowType.Int(32, true);
+		case Types.BIGINT: return new ArrowType.Int(64, true);
+		case Types.REAL: return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+		case Types.FLOAT:
+		case Types.DOUBLE:
+		case Types.DECIMAL:
+		case Types.NUMERIC: return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+		case Types.BOOLEAN:
+		case Types.BIT: return ArrowType.Bool.INSTANCE;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY: return ArrowType.Binary.INSTANCE;
+		case Types.DATE: return new ArrowType.Date(DateUnit.MILLISECOND);
+		case Types.TIME:
+		case Types.TIME_WITH_TIMEZONE: return new ArrowType.Time(TimeUnit.MILLISECOND, 32);
+		case Types.TIMESTAMP:
+		case Types.TIMESTAMP_WITH_TIMEZONE: return new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC");
+		default: return ArrowType.Utf8.INSTANCE;
+		}
+	}
+	
+	private static CellWriter cellWriter(ResultSet rs, int c, int sqlType, FieldVector fv) {
+		switch(sqlType) {
+		case Types.TINYINT: {
+			TinyIntVector v = (TinyIntVector) fv;
+			return (r, i) -> { byte b = rs.getByte(c); if(rs.wasNull()) { v.setNull(i); } else { v.setSafe(i, b); } };
+		}
+		case Types.SMALLINT: {
+			SmallIntVector v = (SmallIntVector) fv;
+			return (r, i) -> { short s = rs.getShort(c); if(rs.wasNull()) { v.setNull(i); } else { v.setSafe(i, s); } };
+		}
+		case Types.INTEGER: {
+			IntVector v = (IntVector) fv;
+			return (r, i) -> { int n = rs.getInt(c); if(rs.wasNull()) { v.setNull(i); } else { v.setSafe(i, n); } };
+		}
+		case Types.BIGINT: {
+			BigIntVector v = (BigIntVector) fv;
+			return (r, i) -> { long l = rs.getLong(c); if(rs.wasNull()) { v.setNull(i); } else { v.setSafe(i, l); } };
+		}
+		case Types.REAL: {
+			Float4Vector v = (Float4Vector) fv;
+			return (r, i) -> { float f = rs.getFloat(c); if(rs.wasNull()) { v.setNull(i); } else { v.setSafe(i, f); } };
+		}
+		case Types.FLOAT:
+		case Types.DOUBLE:
+		case Types.DECIMAL:
+		case Types.NUMERIC: {
+			Float8Vector v = (Float8Vector) fv;
+			return (r, i) -> { double d = rs.getDouble(c); if(rs.wasNull()) { v.setNull(i); } else { v.setSafe(i, d); } };
+		}
+		case Types.BOOLEAN:
+		case Types.BIT: {
+			BitVector v = (BitVector) fv;
+			return (r, i) -> { boolean b = rs.getBoolean(c); if(rs.wasNull()) { v.setNull(i); } else { v.setSafe(i, b ? 1 : 0); } };
+		}
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY: {
+			VarBinaryVector v = (VarBinaryVector) fv;
+			return (r, i) -> { byte[] b = rs.getBytes(c); if(b == null) { v.setNull(i); } else { v.setSafe(i, b); } };
+		}
+		case Types.DATE: {
+			DateMilliVector v = (DateMilliVector) fv;
+			return (r, i) -> { Object o = rs.getObject(c); if(o == null) { v.setNull(i); } else { v.setSafe(i, ResultSetSerializer.toEpochMillis(o)); } };
+		}
+		case Types.TIME:
+		case Types.TIME_WITH_TIMEZONE: {
+			TimeMilliVector v = (TimeMilliVector) fv;
+			return (r, i) -> { Object o = rs.getObject(c); if(o == null) { v.setNull(i); } else { v.setSafe(i, (int) ResultSetSerializer.toEpochMillis(o)); } };
+		}
+		case Types.TIMESTAMP:
+		case Types.TIMESTAMP_WITH_TIMEZONE: {
+			TimeStampMilliTZVector v = (TimeStampMilliTZVector) fv;
+			return (r, i) -> { Object o = rs.getObject(c); if(o == null) { v.setNull(i); } else { v.setSafe(i, ResultSetSerializer.toEpochMillis(o)); } };
+		}
+		default: {
+			VarCharVector v = (VarCharVector) fv;
+			return (r, i) -> { Object o = rs.getObject(c); if(o == null) { v.setNull(i); } else { v.setSafe(i, o.toString().getBytes(StandardCharsets.UTF_8)); } };
+		}
+		}
+	}
+	
+	/** kdb columns are primitive arrays with in-band nulls, anything not listed is sent as text. */
+	private static ArrowType toArrowType(Object kdbColumn) {
+		if(kdbColumn instanceof boolean[]) { return ArrowType.Bool.INSTANCE; }
+		if(kdbColumn instanceof byte[]) { return new ArrowType.Int(8, true); }
+		if(kdbColumn instanceof short[]) { return new ArrowType.Int(16, true); }
+		if(kdbColumn instanceof int[]) { return new ArrowType.Int(32, true); }
+		if(kdbColumn instanceof long[]) { return new ArrowType.Int(64, true); }
+		if(kdbColumn instanceof float[]) { return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE); }
+		if(kdbColumn instanceof double[]) { return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE); }
+		if(kdbColumn instanceof java.sql.Date[]) { return new ArrowType.Date(DateUnit.MILLISECOND); }
+		if(kdbColumn instanceof java.sql.Time[]) { return new ArrowType.Time(TimeUnit.MILLISECOND, 32); }
+		if(kdbColumn instanceof java.util.Date[]) { return new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC"); }
+		if(kdbColumn instanceof LocalDate[]) { return new ArrowType.Date(DateUnit.MILLISECOND); }
+		if(kdbColumn instanceof LocalTime[]) { return new ArrowType.Time(TimeUnit.MILLISECOND, 32); }
+		if(kdbColumn instanceof Instant[] || kdbColumn instanceof LocalDateTime[]) { return new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC"); }
+		return ArrowType.Utf8.INSTANCE;
+	}
+	
+	private static CellWriter cellWriter(Object col, FieldVector fv) {
+		if(col instanceof boolean[]) {
+			boolean[] a = (boolean[]) col;
+			BitVector v = (BitVector) fv;
+			return (r, i) -> v.setSafe(i, a[r] ? 1 : 0);
+		} else if(col instanceof byte[]) {
+			byte[] a = (byte[]) col;
+			TinyIntVector v = (TinyIntVector) fv;
+			return (r, i) -> v.setSafe(i, a[r]);
+		} else if(col instanceof short[]) {
+			short[] a = (short[]) col;
+			SmallIntVector v = (SmallIntVector) fv;
+			return (r, i) -> { if(a[r] == Short.MIN_VALUE) { v.setNull(i); } else { v.setSafe(i, a[r]); } };
+		} else if(col instanceof int[]) {
+			int[] a = (int[]) col;
+			IntVector v = (IntVector) fv;
+			return (r, i) -> { if(a[r] == Integer.MIN_VALUE) { v.setNull(i); } else { v.setSafe(i, a[r]); } };
+		} else if(col instanceof long[]) {
+			long[] a = (long[]) col;
+			BigIntVector v = (BigIntVector) fv;
+			return (r, i) -> { if(a[r] == Long.MIN_VALUE) { v.setNull(i); } else { v.setSafe(i, a[r]); } };
+		} else if(col instanceof float[]) {
+			float[] a = (float[]) col;
+			Float4Vector v = (Float4Vector) fv;
+			return (r, i) -> { if(Float.isNaN(a[r])) { v.setNull(i); } else { v.setSafe(i, a[r]); } };
+		} else if(col instanceof double[]) {
+			double[] a = (double[]) col;
+			Float8Vector v = (Float8Vector) fv;
+			return (r, i) -> { if(Double.isNaN(a[r])) { v.setNull(i); } else { v.setSafe(i, a[r]); } };
+		} else if(col instanceof java.sql.Date[]) {
+			java.sql.Date[] a = (java.sql.Date[]) col;
+			DateMilliVector v = (DateMilliVector) fv;
+			return (r, i) -> { if(c.qn(a[r])) { v.setNull(i); } else { v.setSafe(i, a[r].getTime()); } };
+		} else if(col instanceof java.sql.Time[]) {
+			java.sql.Time[] a = (java.sql.Time[]) col;
+			TimeMilliVector v = (TimeMilliVector) fv;
+			return (r, i) -> { if(c.qn(a[r])) { v.setNull(i); } else { v.setSafe(i, (int) a[r].getTime()); } };
+		} else if(col instanceof java.util.Date[]) {
+			java.util.Date[] a = (java.util.Date[]) col;
+			TimeStampMilliTZVector v = (TimeStampMilliTZVector) fv;
+			return (r, i) -> { if(c.qn(a[r])) { v.setNull(i); } else { v.setSafe(i, a[r].getTime()); } };
+		} else if(col instanceof LocalDate[]) {
+			LocalDate[] a = (LocalDate[]) col;
+			DateMilliVector v = (DateMilliVector) fv;
+			return (r, i) -> { if(c.qn(a[r])) { v.setNull(i); } else { v.setSafe(i, ResultSetSerializer.toEpochMillis(a[r])); } };
+		} else if(col instanceof LocalTime[]) {
+			LocalTime[] a = (LocalTime[]) col;
+			TimeMilliVector v = (TimeMilliVector) fv;
+			return (r, i) -> { if(c.qn(a[r])) { v.setNull(i); } else { v.setSafe(i, (int) ResultSetSerializer.toEpochMillis(a[r])); } };
+		} else if(col instanceof Instant[] || col instanceof LocalDateTime[]) {
+			Object[] a = (Object[]) col;
+			TimeStampMilliTZVector v = (TimeStampMilliTZVector) fv;
+			return (r, i) -> { if(c.qn(a[r])) { v.setNull(i); } else { v.setSafe(i, ResultSetSerializer.toEpochMillis(a[r])); } };
+		}
+		VarCharVector v = (VarCharVector) fv;
+		return (r, i) -> {
+			Object o = Array.get(col, r);
+			if(o == null || (!(o instanceof Character) && c.qn(o))) {
+				v.setNull(i);
+			} else {
+				String s = o instanceof char[] ? new String((char[]) o) : o.toString();
+				v.setSafe(i, s.getBytes(StandardCharsets.UTF_8));
+			}
+		};
+	}
+}
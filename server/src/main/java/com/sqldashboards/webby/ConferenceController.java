@@ -27,6 +27,7 @@
 package com.sqldashboards.webby;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -42,6 +43,8 @@ import java.security.Principal;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -52,12 +55,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 import javax.activation.UnsupportedDataTypeException;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Joiner;
 import com.sqldashboards.dashy.EngineResult;
@@ -66,11 +74,15 @@ import com.sqldashboards.dashy.QueryEngine2.ArgVal;
 import com.sqldashboards.dashy.QueryTranslator;
 import com.sqldashboards.dashy.Queryable;
 import com.sqldashboards.dashy.ServerConfig;
+import com.sqldashboards.dashy.SharedQueryCache;
+import com.sqldashboards.dashy.TranslationResult;
 import com.sqldashboards.lic.PLicenser;
+import com.sqldashboards.shared.ConnectionManager.StreamingResult;
 import com.sqldashboards.shared.JdbcTypes;
 import com.sqldashboards.shared.MetaInfo;
 import com.sqldashboards.shared.MetaInfo.ColumnInfo;
 import com.sqldashboards.webby.WebSocketServer.ArgEntry;
+import com.timestored.kdb.QueryResult;
 import com.timestored.kdb.QueryResultI;
 
 import io.micronaut.core.annotation.Introspected;
@@ -91,10 +103,14 @@ import io.micronaut.http.annotation.QueryValue;
 import io.micronaut.http.server.types.files.StreamedFile;
 import io.micronaut.security.annotation.Secured;
 import io.micronaut.security.rules.SecurityRule;
+import org.reactivestreams.Publisher;
 import jakarta.inject.Inject;
 import com.kx.c.Dict;
 import com.kx.c.KException;
 
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
 import lombok.Data;
 import lombok.extern.java.Log;
 
@@ -111,18 +127,20 @@ public class ConferenceController {
 		private String query;
 		private String serverCmd;
 		private ArgEntry[] argsArray;
+		/** rows (default) or columns, see {@link ResultSetSerializer.Format}. */
+		private String format;
 	}
 
     @Post("/api/a.json/{server}")   @Consumes(MediaType.ALL)
-    public String postQuery(HttpRequest<?> request, @Nullable @QueryValue String server, @Body String query, Principal principal) throws JsonProcessingException, IOException {
+    public String postQuery(HttpRequest<?> request, @Nullable @QueryValue String server, @Body String query, @Nullable @QueryValue String format, Principal principal) throws JsonProcessingException, IOException {
     	// If it's JSON, this allows more complicated query where Arguments are specified
 		if(request.getContentType().isPresent() && request.getContentType().get().equals(MediaType.APPLICATION_JSON_TYPE)) {
 			ObjectMapper objectMapper = new ObjectMapper();
 			QueryWithArgs qa = objectMapper.readValue(query, QueryWithArgs.class);
-			return querydb(server, qa.query, qa.serverCmd, principal, qa.argsArray);
+			return querydb(server, qa.query, qa.serverCmd, qa.format != null ? qa.format : format, principal, qa.argsArray);
 		}
 		// Else treat it as a plain text query
-		return querydb(server, query, null, principal, null);
+		return querydb(server, query, null, format, principal, null);
 
 	}
 
@@ -133,9 +151,36 @@ public class ConferenceController {
 //	}
 
 	@Get("/api/a.json")
-    public String querydb(@Nullable @QueryValue String server, @QueryValue String query, @Nullable @QueryValue String serverCmd, Principal principal, @Nullable ArgEntry[] argsArray) throws JsonProcessingException, IOException {
+    public String querydb(@Nullable @QueryValue String server, @QueryValue String query, @Nullable @QueryValue String serverCmd, 
+    		@Nullable @QueryValue String format, Principal principal, @Nullable ArgEntry[] argsArray) throws JsonProcessingException, IOException {
 		EngineResult er = query(server, query, principal, argsArray, serverCmd);
-		return new ResultSetSerializer().toString(er);
+		return new ResultSetSerializer(ResultSetSerializer.Format.parse(format)).toString(er);
+	}
+
+    @Post(value = "/api/a.arrow/{server}", produces = ArrowSerializer.MEDIA_TYPE)   @Consumes(MediaType.ALL)
+    public HttpResponse<?> postArrowQuery(HttpRequest<?> request, @Nullable @QueryValue String server, @Body String query, Principal principal) throws JsonProcessingException {
+		if(request.getContentType().isPresent() && request.getContentType().get().equals(MediaType.APPLICATION_JSON_TYPE)) {
+			ObjectMapper objectMapper = new ObjectMapper();
+			QueryWithArgs qa = objectMapper.readValue(query, QueryWithArgs.class);
+			return toArrow(query(server, qa.query, principal, qa.argsArray, qa.serverCmd));
+		}
+		return toArrow(query(server, query, principal));
+    }
+
+	@Get(value = "/api/a.arrow", produces = ArrowSerializer.MEDIA_TYPE)
+    public HttpResponse<?> getArrow(@Nullable @QueryValue String server, @QueryValue String query, @Nullable @QueryValue String serverCmd, Principal principal) {
+		return toArrow(query(server, query, principal, null, serverCmd));
+	}
+	
+	private static HttpResponse<?> toArrow(EngineResult er) {
+		if(er.getE() != null) {
+			return HttpResponse.serverError(er.getE().getLocalizedMessage()).contentType(MediaType.TEXT_PLAIN_TYPE);
+		}
+		try {
+			return HttpResponse.ok(new ArrowSerializer().toBytes(er, null)).contentType(ArrowSerializer.MEDIA_TYPE);
+		} catch (IOException | SQLException e) {
+			return HttpResponse.serverError(e.getLocalizedMessage()).contentType(MediaType.TEXT_PLAIN_TYPE);
+		}
 	}
 
 	private EngineResult query(String server, String query, Principal principal) {
@@ -146,14 +191,19 @@ public class ConferenceController {
 		return performQuery(server, query, principal, argsArray, serverCmd);
 	}
 
-	private EngineResult performQuery(String server, String query, Principal principal, ArgEntry[] argsArray, @Nullable String serverCmd) {
-		// ALl queries from pulse should go through translator to get pre/post wrap and ((args)) converted.
+	private static QueryTranslator newQueryTranslator(Principal principal, ArgEntry[] argsArray) {
     	Map<String, ArgVal> m = argsArray == null ? new HashMap<>() : WebSocketServer.argsToMap(argsArray);
 		m.put("user", ArgVal.s(principal.getName()));
-		QueryTranslator queryTranslator = new QueryTranslator(m);
+		return new QueryTranslator(m);
+	}
+
+	private EngineResult performQuery(String server, String query, Principal principal, ArgEntry[] argsArray, @Nullable String serverCmd) {
+		// ALl queries from pulse should go through translator to get pre/post wrap and ((args)) converted.
+		QueryTranslator queryTranslator = newQueryTranslator(principal, argsArray);
 		Queryable queryable = new Queryable(server, query, 0, serverCmd);
 		DbServerController.installDriverIfDriverNotPresent(Application.APPNAME, Application.CONNMAN.getServer(server).getJdbcType());
-		return QueryEngine2.performQuery(queryable, Application.CONNMAN, queryTranslator);
+		// refresh of 0 means only concurrent identical requests are collapsed, completed results are never reused.
+		return QueryEngine2.performQuery(queryable, Application.CONNMAN, queryTranslator, SharedQueryCache.getInstance());
 	}
 
 	/**
@@ -175,26 +225,221 @@ public class ConferenceController {
     	return HttpResponse.ok(WebSocketServer.requestKey(principal.getName()));
     }
 
-    @Post("/api/a.csv/{server}")   @Consumes(MediaType.ALL)
-    public String postCsvQuery(@Nullable @QueryValue String server, @Body String query, Principal principal) throws JsonProcessingException, IOException {
-		try {
-	    	QueryResultI qr = query(server, query, principal);
-			return CsvConverter.getCSV(qr.getRs(), true, ",");
-		} catch (SQLException e) {
-			return e.getLocalizedMessage();
-		}
+    @Post(value = "/api/a.csv/{server}", produces = "text/comma-separated-values")   @Consumes(MediaType.ALL)
+    public Publisher<byte[]> postCsvQuery(@Nullable @QueryValue String server, @Body String query, Principal principal) {
+		return streamCSV(server, query, principal);
     }
     
     @Get(value = "/api/a.csv", produces = "text/comma-separated-values")
-    public String getCSV(@Nullable @QueryValue String server, @QueryValue String query, Principal principal) {
-		QueryResultI qr = performQuery(server, query, principal, null, null);
-		try {
-			return CsvConverter.getCSV(qr.getRs(), true, ",");
-		} catch (SQLException e) {
-			return e.getLocalizedMessage();
-		}
+    public Publisher<byte[]> getCSV(@Nullable @QueryValue String server, @QueryValue String query, Principal principal) {
+		return streamCSV(server, query, principal);
+    }
+
+    /**
+     * Same JSON as /api/a.json in rows format but without a row limit, sent in chunks as they are read from the database.
+     * The "types" are written after the "data" as some are only known once the values have been seen.
+     */
+    @Post("/api/stream.json/{server}")   @Consumes(MediaType.ALL)
+    public Publisher<byte[]> postJsonStream(@Nullable @QueryValue String server, @Body String query, Principal principal) {
+		return streamJSON(server, query, principal);
+    }
+    
+    @Get("/api/stream.json")
+    public Publisher<byte[]> getJsonStream(@Nullable @QueryValue String server, @QueryValue String query, Principal principal) {
+		return streamJSON(server, query, principal);
     }
 
+    /**
+     * Return the CSV in chunks pulled from an open database cursor as the client reads them, 
+     * so that exports of any size are sent in constant memory and without a row limit.
+     * kdb sends the result as fetch size chunks, each is converted and sent before the next is read.
+     */
+	private Flux<byte[]> streamCSV(String server, String query, Principal principal) {
+		return stream(server, query, principal, CsvChunker::new, qr -> {
+			try {
+				return qr.getRs() == null && qr.getE() != null ? qr.getE().getLocalizedMessage() : CsvConverter.getCSV(qr.getRs(), true, ",");
+			} catch (SQLException e) {
+				return e.getLocalizedMessage();
+			}
+		});
+	}
+
+	private Flux<byte[]> streamJSON(String server, String query, Principal principal) {
+		return stream(server, query, principal, JsonChunker::new, qr -> {
+			try {
+				return new ResultSetSerializer().toString(qr);
+			} catch (IOException e) {
+				return "{\"exception\":" + JsonStringEncoder.getInstance().quoteAsString(e.getLocalizedMessage()) + "}";
+			}
+		});
+	}
+
+	@FunctionalInterface
+	private static interface ChunkerFactory {
+		Chunker create(StreamingResult streamingResult) throws SQLException;
+	}
+
+	/**
+	 * Pivot queries and the in-memory kdb can't be read incrementally, so are queried and converted whole by toText.
+	 * A query that fails before any rows are sent returns its error as toText converts it, as a whole result would.
+	 * If it fails after some rows were sent, the response can only be cut short.
+	 */
+	private Flux<byte[]> stream(String server, String query, Principal principal, ChunkerFactory chunkerFactory, 
+			Function<QueryResultI, String> toText) {
+		ServerConfig sc = Application.CONNMAN.getServer(server);
+		TranslationResult tr = sc == null ? null : newQueryTranslator(principal, null).translate(query, null, sc);
+		if(sc == null || sc.getHost().equalsIgnoreCase("mem") || !tr.isOK() || tr.getPivotlist().size() > 0) {
+			return Flux.defer(() -> {
+				QueryResultI qr = performQuery(server, query, principal, null, null);
+				return Flux.just(toText.apply(qr).getBytes(StandardCharsets.UTF_8));
+			}).subscribeOn(Schedulers.boundedElastic());
+		}
+		int fetchSize = Application.CONFIG.getCsv_fetch_size();
+		AtomicBoolean sentAny = new AtomicBoolean(false);
+		return Flux.<byte[],Chunker>generate(() -> {
+					DbServerController.installDriverIfDriverNotPresent(Application.APPNAME, sc.getJdbcType());
+					return chunkerFactory.create(Application.CONNMAN.openStream(sc, tr.getTranslation(), fetchSize));
+				}, (chunker, sink) -> {
+					try {
+						byte[] b = chunker.next();
+						if(b == null) {
+							sink.complete();
+						} else {
+							sentAny.set(true);
+							sink.next(b);
+						}
+					} catch (SQLException | IOException e) {
+						log.warning("Streaming export failed for " + server + ": " + e.getLocalizedMessage());
+						sink.error(e);
+					}
+					return chunker;
+				}, Chunker::close)
+				.onErrorResume(e -> {
+					if(sentAny.get()) {
+						return Flux.error(e);
+					}
+					Exception ex = e instanceof Exception ? (Exception) e : new IOException(e);
+					return Flux.just(toText.apply(QueryResult.exceptionResult(query, ex)).getBytes(StandardCharsets.UTF_8));
+				}).subscribeOn(Schedulers.boundedElastic());
+	}
+	
+	/** Reads rows from an open result and converts them into chunks of roughly CHUNK_SIZE bytes. */
+	private static abstract class Chunker implements AutoCloseable {
+		static final int CHUNK_SIZE = 64 * 1024;
+		protected final StreamingResult streamingResult;
+		private boolean started = false;
+		private boolean done = false;
+
+		Chunker(StreamingResult streamingResult) {
+			this.streamingResult = streamingResult;
+		}
+		
+		/** @return The next chunk or null if all rows have been read. */
+		byte[] next() throws SQLException, IOException {
+			if(done) {
+				return null;
+			}
+			if(!started) {
+				writeStart();
+				started = true;
+			}
+			ResultSet rs = streamingResult.getRs();
+			while(size() < CHUNK_SIZE) {
+				if(!rs.next()) {
+					writeEnd();
+					done = true;
+					break;
+				}
+				writeRow(rs);
+			}
+			return take();
+		}
+
+		abstract void writeStart() throws SQLException, IOException;
+		abstract void writeRow(ResultSet rs) throws SQLException, IOException;
+		abstract void writeEnd() throws SQLException, IOException;
+		/** @return Size of the output written since the last {@link #take()}. */
+		abstract int size();
+		/** @return Output written since the last call or null if there was none. */
+		abstract byte[] take() throws IOException;
+
+		@Override public void close() { streamingResult.close(); }
+	}
+
+	private static class CsvChunker extends Chunker {
+		private final CsvConverter.RowWriter rowWriter;
+		private final StringBuilder sb = new StringBuilder(CHUNK_SIZE + 1024);
+
+		CsvChunker(StreamingResult streamingResult) throws SQLException {
+			super(streamingResult);
+			this.rowWriter = new CsvConverter.RowWriter(streamingResult.getRs(), ",");
+		}
+
+		@Override void writeStart() throws SQLException { rowWriter.writeHeader(sb); }
+		@Override void writeRow(ResultSet rs) throws SQLException { rowWriter.writeRow(sb); }
+		@Override void writeEnd() { }
+		@Override int size() { return sb.length(); }
+
+		@Override byte[] take() {
+			byte[] b = sb.length() == 0 ? null : sb.toString().getBytes(StandardCharsets.UTF_8);
+			sb.setLength(0);
+			return b;
+		}
+	}
+
+	private static class JsonChunker extends Chunker {
+		private final ResultSetSerializer serializer = new ResultSetSerializer();
+		private final ByteArrayOutputStream baos = new ByteArrayOutputStream(CHUNK_SIZE + 1024);
+		private final JsonGenerator jgen;
+		private final String[] columnNames;
+		private final int[] columnTypes;
+		private final Map<String,String> colNamesToJsTypes = new HashMap<>(3);
+
+		JsonChunker(StreamingResult streamingResult) throws SQLException {
+			super(streamingResult);
+			ResultSetMetaData rsmd = streamingResult.getRs().getMetaData();
+			columnNames = new String[rsmd.getColumnCount()];
+			columnTypes = new int[columnNames.length];
+			for(int i = 0; i < columnNames.length; i++) {
+				columnNames[i] = rsmd.getColumnLabel(i + 1);
+				columnTypes[i] = rsmd.getColumnType(i + 1);
+			}
+			try {
+				jgen = new JsonFactory().createGenerator(baos);
+			} catch (IOException e) {
+				throw new SQLException(e);
+			}
+		}
+
+		@Override void writeStart() throws IOException {
+			jgen.writeStartObject();
+			jgen.writeFieldName("tbl");
+			jgen.writeStartObject();
+			jgen.writeFieldName("data");
+			jgen.writeStartArray();
+		}
+		
+		@Override void writeRow(ResultSet rs) throws SQLException, IOException {
+			serializer.writeRow(rs, jgen, columnNames, columnTypes, colNamesToJsTypes, null);
+		}
+		
+		@Override void writeEnd() throws IOException {
+			jgen.writeEndArray();
+			serializer.writeTypes(jgen, columnNames, columnTypes, colNamesToJsTypes);
+			jgen.writeEndObject();
+			jgen.writeEndObject();
+		}
+		
+		@Override int size() { return baos.size() + Math.max(0, jgen.getOutputBuffered()); }
+
+		@Override byte[] take() throws IOException {
+			jgen.flush();
+			byte[] b = baos.size() == 0 ? null : baos.toByteArray();
+			baos.reset();
+			return b;
+		}
+	}
+
 
 	public static boolean runSQL(String sql) throws ClassNotFoundException, SQLException {
 		PreparedStatement ps = null;
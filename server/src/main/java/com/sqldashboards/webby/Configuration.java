@@ -47,4 +47,42 @@ public class Configuration {
 	private boolean auth_proxy_enabled = false;
 	private String username_header_name = "X-WEBAUTH-USER";
 	private boolean auto_sign_up = false;
+	
+	/** If true, due queries run on per-server worker pools rather than one after another. **/
+	private boolean query_dispatch_parallel = false;
+	private int query_max_inflight_per_server = 4;
+	private int query_max_inflight_per_session = 8;
+	/** If true, identical queries from different sessions run once per refresh period and share their result. **/
+	private boolean query_result_cache = true;
+	/** A refreshing query is cancelled once it has run for this fraction of its refresh period, 0 (default) disables the deadline. **/
+	private double query_deadline_refresh_fraction = 0;
+	/** The shortest default deadline in seconds, so frequently refreshing queries are not cancelled too eagerly. **/
+	private int query_deadline_min_seconds = 5;
+	/** A query slower than this share of its refresh period on average is refreshed less often, 0 to always use the refresh period. **/
+	private double query_max_refresh_share = 0.5;
+	/** If true and running on JDK 21+, queries and subscription workers run on virtual threads rather than OS threads. **/
+	private boolean query_virtual_threads = false;
+	/** Connection pool limits for each database server, shared by all sessions. **/
+	private int pool_max_total_per_server = 8;
+	private int pool_max_idle_per_server = 8;
+	/** Seconds to wait for a connection from a server's exhausted pool before the query fails, negative waits forever. **/
+	private int pool_max_wait_seconds = 30;
+	/** Maximum queries sent on one kdb connection before their responses are read. **/
+	private int pool_pipeline_depth = 8;
+	/** If true, dashboards may ask to be sent only the rows that changed rather than whole tables. **/
+	private boolean websocket_delta = true;
+	/** Rows fetched per database round trip when streaming CSV and JSON exports, for kdb the rows in each chunk sent. **/
+	private int csv_fetch_size = 10_000;
+	/** Threads decoding kdb subscription messages, shared by all subscriptions. **/
+	private int subscription_worker_threads = 4;
+	/** Maximum updates per second sent for each subscription, updates arriving faster are coalesced. **/
+	private int subscription_max_publish_hz = 10;
+	/** APPEND sends every row coalesced, MERGE_BY_KEY sends only the last row for each key. **/
+	private String subscription_conflation = "APPEND";
+	private String subscription_conflation_key = "sym";
+	/** If above 0, each subscription keeps up to this many rows from successive updates rather than only the latest. **/
+	private int subscription_table_max_rows = 0;
+	private int subscription_table_window_seconds = 0;
+	/** Comma separated columns whose rows are replaced rather than appended when a subscription table is kept. **/
+	private String subscription_table_keys = "";
 }
@@ -29,6 +29,7 @@ package com.sqldashboards.webby;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 
 public class CsvConverter {
 	private static final char NL = '\n';
@@ -40,14 +41,43 @@ public class CsvConverter {
 	 * @throws SQLException 
 	 */
 	public static String getCSV(ResultSet rs, boolean includeHeaders, final String separator) throws SQLException {
-		
-		ResultSetMetaData rsmd = rs.getMetaData();
-		int cEnd = rsmd.getColumnCount();
-		
+		RowWriter rowWriter = new RowWriter(rs, separator);
 		StringBuilder sb = new StringBuilder();
 		
 		// include column headers if whole table
 		if(includeHeaders) {
+			rowWriter.writeHeader(sb);
+		}
+		
+		// loop through rows/cols building up output string.
+        while (rs.next()) {
+        	rowWriter.writeRow(sb);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Writes one row at a time so that large results can be streamed in chunks.
+	 * Numbers are read using their primitive getters to avoid creating an object per cell.
+	 */
+	public static class RowWriter {
+		private final ResultSet rs;
+		private final String separator;
+		private final int[] types;
+		
+		public RowWriter(ResultSet rs, String separator) throws SQLException {
+			this.rs = rs;
+			this.separator = separator;
+			ResultSetMetaData rsmd = rs.getMetaData();
+			types = new int[rsmd.getColumnCount()];
+			for (int c = 1; c <= types.length; c++) {
+				types[c-1] = rsmd.getColumnType(c);
+			}
+		}
+		
+		public void writeHeader(StringBuilder sb) throws SQLException {
+			ResultSetMetaData rsmd = rs.getMetaData();
+			int cEnd = types.length;
 			for (int c = 1; c <= cEnd; c++) {
 				sb.append(rsmd.getColumnName(c));
 				if(c!=cEnd) {
@@ -56,27 +86,44 @@ public class CsvConverter {
 			}
 			sb.append(NL);
 		}
-		
-		// loop through rows/cols building up output string.
-        while (rs.next()) {
+
+		/** Append the current row of the ResultSet. Nulls are written as null as they always have been. */
+		public void writeRow(StringBuilder sb) throws SQLException {
+			int cEnd = types.length;
 			for (int c = 1; c <= cEnd; c++) {
-				String s = "" + rs.getObject(c);
-//				if(o!=null) {
-//					s = stringValue==null ? o.toString() 
-//							: stringValue.getString(o);
-//					// numbers use unformatted to prevent erroneous commas
-//					// all else take a chance on the stringValuer
-//					if(o instanceof Number && !s.trim().isEmpty()) {
-//						s = "" + o;
-//					}
-//				}
-				sb.append(s);
+				switch(types[c-1]) {
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER:
+				case Types.BIGINT:
+					long l = rs.getLong(c);
+					if(rs.wasNull()) { sb.append("null"); } else { sb.append(l); }
+					break;
+				case Types.FLOAT:
+				case Types.DOUBLE:
+					double d = rs.getDouble(c);
+					if(rs.wasNull()) { sb.append("null"); } else { sb.append(d); }
+					break;
+				case Types.REAL:
+					float f = rs.getFloat(c);
+					if(rs.wasNull()) { sb.append("null"); } else { sb.append(f); }
+					break;
+				case Types.CHAR:
+				case Types.NCHAR:
+				case Types.VARCHAR:
+				case Types.NVARCHAR:
+				case Types.LONGVARCHAR:
+				case Types.LONGNVARCHAR:
+					sb.append(rs.getString(c));
+					break;
+				default:
+					sb.append(rs.getObject(c));
+				}
 				if(c!=cEnd) { // comma except after last column
 					sb.append(separator);
 				}
 			}
 			sb.append(NL);
 		}
-		return sb.toString();
 	}
 }
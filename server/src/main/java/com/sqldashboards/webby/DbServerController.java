@@ -33,6 +33,7 @@ import java.util.Optional;
 
 import javax.validation.Valid;
 
+import com.sqldashboards.dashy.SharedQueryCache;
 import com.sqldashboards.pro.ConnectionShortFormat;
 import com.sqldashboards.pro.ConnectionShortFormat.ParseResult;
 import com.sqldashboards.shared.JdbcTypes;
@@ -138,6 +139,7 @@ public class DbServerController {
 			serverConfigRepository.update(serverConfigDTO);
 			installDriverIfDriverNotPresent(Application.APPNAME, serverConfigDTO.toDashySC().getJdbcType());
 			Application.CONNMAN.updateServer(serverConfigDTO.getName(), serverConfigDTO.toDashySC());
+			SharedQueryCache.getInstance().clear(); // drop results fetched using the old settings
 			return "updated";
 		}
 		saveSC(serverConfigDTO);
@@ -151,6 +153,7 @@ public class DbServerController {
 		Optional<ServerConfigDTO> saved = serverConfigRepository.findById(sc.getId());
 		installDriverIfDriverNotPresent(Application.APPNAME, serverConfig.getJdbcType());
 		Application.CONNMAN.updateServer(originalSC.get().getName(), saved.get().toDashySC());
+		SharedQueryCache.getInstance().clear();
 		return saved.isPresent() ? 
 				HttpResponse.created(sc).headers(headers -> headers.location(toUri(sc)))
 				: HttpResponse.notFound();
@@ -163,6 +166,7 @@ public class DbServerController {
 			return HttpResponse.notFound();
 		}
 		Application.CONNMAN.removeServer(exists.get().getName());
+		SharedQueryCache.getInstance().clear();
     	serverConfigRepository.deleteById(id);
         return HttpResponse.noContent();
     }
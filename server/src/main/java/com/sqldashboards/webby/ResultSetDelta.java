@@ -0,0 +1,299 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.webby;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sqldashboards.dashy.DBHelper;
+import com.sqldashboards.dashy.SubscriptionTable.TableDelta;
+
+import lombok.Data;
+
+/**
+ * Calculates row-level changes between successive results of one queryable so that only changed rows
+ * are sent to the browser. Only a hash per row, plus key values if key columns are set, is kept 
+ * from the previous result, not the rows themselves.
+ * A delta is a list of ops that the client applies in order to its previous table:
+ * <ul>
+ * <li>delete - remove the rows at the given indices of the previous table.</li>
+ * <li>update - replace the rows at the given indices, counted after deletes, with the supplied rows.</li>
+ * <li>append - add the supplied rows to the end.</li>
+ * </ul>
+ * Without key columns rows are matched by position, which suits blotters that only grow at the end and
+ * grids where cells change in place. With key columns, rows are matched on key so that rows can be
+ * removed from the middle. If the columns change, rows are reordered or much of the table changed,
+ * no delta is produced and a full snapshot should be sent instead.
+ */
+class ResultSetDelta {
+
+	/** If more than this fraction of rows changed it's cheaper to send the whole table. */
+	private static final double MAX_CHANGED_FRACTION = 0.5;
+	
+	private final List<String> keyColumns;
+	private final ResultSetSerializer serializer = new ResultSetSerializer();
+	
+	/** @param keyColumns Columns that uniquely identify a row where present, empty to match rows by position. */
+	ResultSetDelta(List<String> keyColumns) {
+		this.keyColumns = keyColumns == null ? Collections.emptyList() : keyColumns;
+	}
+	
+	/** What is remembered about the last result sent to the client. */
+	@Data
+	static class RowState {
+		private final String[] columnNames;
+		private final int[] columnTypes;
+		private final long[] rowHashes;
+		/** Key value for each row or null if not keyed or the keys weren't unique. */
+		private final List<Object> keys;
+	}
+
+	/** The new state to remember and either the delta JSON or null if a full snapshot should be sent. */
+	@Data
+	static class Diff {
+		private final RowState state;
+		private final String json;
+	}
+	
+	/**
+	 * @param prev The state of the previous result sent to the client or null if none was sent.
+	 * @return The diff between prev and rs, the cursor of rs is moved.
+	 */
+	Diff diff(RowState prev, ResultSet rs, boolean exceededMaxRows) throws SQLException, IOException {
+		RowState state = summarise(rs);
+		if(prev == null || !Arrays.equals(prev.columnNames, state.columnNames) || !Arrays.equals(prev.columnTypes, state.columnTypes)) {
+			return new Diff(state, null);
+		}
+		int n = prev.rowHashes.length;
+		int m = state.rowHashes.length;
+		int maxChanges = (int) (MAX_CHANGED_FRACTION * Math.max(n, m));
+		
+		// Positional
+		List<Integer> deletes = new ArrayList<>();
+		List<Integer> updates = new ArrayList<>();
+		for(int i=0; i<Math.min(n, m); i++) {
+			if(prev.rowHashes[i] != state.rowHashes[i]) {
+				updates.add(i);
+			}
+		}
+		for(int i=m; i<n; i++) {
+			deletes.add(i);
+		}
+		int appendFrom = Math.min(n, m);
+		int changes = updates.size() + deletes.size() + (m - appendFrom);
+		
+		// Keyed, only if positional was poor and keys are available for both.
+		if(changes > maxChanges && prev.keys != null && state.keys != null) {
+			deletes.clear();
+			updates.clear();
+			Map<Object,Integer> prevKeyToIdx = new HashMap<>(n);
+			for(int i=0; i<n; i++) {
+				prevKeyToIdx.put(prev.keys.get(i), i);
+			}
+			Set<Object> newKeys = new HashSet<>(state.keys);
+			List<Integer> survivors = new ArrayList<>(n);
+			for(int i=0; i<n; i++) {
+				if(newKeys.contains(prev.keys.get(i))) {
+					survivors.add(i);
+				} else {
+					deletes.add(i);
+				}
+			}
+			// Surviving rows must be in the same order and before any new rows, else the client order would differ.
+			boolean sameOrder = survivors.size() <= m;
+			for(int j=0; j<m && sameOrder; j++) {
+				Object k = state.keys.get(j);
+				if(j < survivors.size()) {
+					int pi = survivors.get(j);
+					sameOrder = k.equals(prev.keys.get(pi));
+					if(sameOrder && prev.rowHashes[pi] != state.rowHashes[j]) {
+						updates.add(j);
+					}
+				} else {
+					sameOrder = !prevKeyToIdx.containsKey(k);
+				}
+			}
+			if(!sameOrder) {
+				return new Diff(state, null);
+			}
+			appendFrom = survivors.size();
+			changes = updates.size() + deletes.size() + (m - appendFrom);
+		}
+		
+		// No changes gives an empty delta, cheaper than a snapshot when only exceededMaxRows differs or the fingerprint collided.
+		if(changes > maxChanges) {
+			return new Diff(state, null);
+		}
+		return new Diff(state, toJson(rs, state.columnNames, state.columnTypes, m, deletes, updates, appendFrom, exceededMaxRows));
+	}
+	
+	/**
+	 * Convert an already known change to a subscription table into delta JSON, without comparing rows.
+	 * @return The delta JSON or null if a full snapshot should be sent instead.
+	 */
+	String toJson(ResultSet rs, TableDelta delta, boolean exceededMaxRows) throws SQLException, IOException {
+		int maxChanges = (int) (MAX_CHANGED_FRACTION * Math.max(delta.getPreviousRowCount(), delta.getRowCount()));
+		if(delta.isReplaced() || delta.getChangeCount() > maxChanges) {
+			return null;
+		}
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int cols = rsmd.getColumnCount();
+		String[] columnNames = new String[cols];
+		int[] columnTypes = new int[cols];
+		for (int i = 0; i < cols; i++) {
+			columnNames[i] = rsmd.getColumnLabel(i + 1);
+			columnTypes[i] = rsmd.getColumnType(i + 1);
+		}
+		List<Integer> deletes = Arrays.stream(delta.getDeleted()).boxed().collect(Collectors.toList());
+		List<Integer> updates = Arrays.stream(delta.getUpdated()).boxed().collect(Collectors.toList());
+		return toJson(rs, columnNames, columnTypes, delta.getRowCount(), deletes, updates, delta.getAppendFrom(), exceededMaxRows);
+	}
+	
+	private RowState summarise(ResultSet rs) throws SQLException {
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int cols = rsmd.getColumnCount();
+		String[] columnNames = new String[cols];
+		int[] columnTypes = new int[cols];
+		for (int i = 0; i < cols; i++) {
+			columnNames[i] = rsmd.getColumnLabel(i + 1);
+			columnTypes[i] = rsmd.getColumnType(i + 1);
+		}
+		
+		int[] keyIdx = new int[keyColumns.size()];
+		for(int k=0; k<keyIdx.length; k++) {
+			keyIdx[k] = -1;
+			for(int i=0; i<cols; i++) {
+				if(columnNames[i].equalsIgnoreCase(keyColumns.get(k))) {
+					keyIdx[k] = i + 1;
+				}
+			}
+		}
+		boolean keyed = keyIdx.length > 0 && Arrays.stream(keyIdx).allMatch(i -> i > 0);
+
+		long[] rowHashes = new long[64];
+		List<Object> keys = keyed ? new ArrayList<>() : null;
+		Set<Object> seenKeys = keyed ? new HashSet<>() : null;
+		int rows = 0;
+		rs.beforeFirst();
+		while(rs.next()) {
+			if(rows == rowHashes.length) {
+				rowHashes = Arrays.copyOf(rowHashes, rows * 2);
+			}
+			rowHashes[rows++] = DBHelper.hashRow(rs, columnTypes);
+			if(keys != null) {
+				Object k;
+				if(keyIdx.length == 1) {
+					k = rs.getObject(keyIdx[0]);
+				} else {
+					Object[] ka = new Object[keyIdx.length];
+					for(int i=0; i<keyIdx.length; i++) {
+						ka[i] = rs.getObject(keyIdx[i]);
+					}
+					k = Arrays.asList(ka);
+				}
+				if(k == null || !seenKeys.add(k)) {
+					keys = null; // keys must be unique and not null to be of use
+					seenKeys = null;
+				} else {
+					keys.add(k);
+				}
+			}
+		}
+		return new RowState(columnNames, columnTypes, Arrays.copyOf(rowHashes, rows), keys);
+	}
+	
+	private String toJson(ResultSet rs, String[] columnNames, int[] columnTypes, int rowCount, List<Integer> deletes, 
+			List<Integer> updates, int appendFrom, boolean exceededMaxRows) throws IOException, SQLException {
+		
+    	ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
+    	JsonGenerator jgen = new JsonFactory().createGenerator(baos);
+    	Map<String,String> colNamesToJsTypes = new HashMap<>(); // types already sent with the snapshot
+    	
+        jgen.writeStartObject();
+        if(exceededMaxRows) {
+	        jgen.writeFieldName("exceededMaxRows");
+	        jgen.writeBoolean(exceededMaxRows);
+        }
+        jgen.writeFieldName("ops");
+        jgen.writeStartArray();
+        if(!deletes.isEmpty()) {
+        	jgen.writeStartObject();
+        	jgen.writeStringField("op", "delete");
+        	jgen.writeFieldName("index");
+        	jgen.writeArray(deletes.stream().mapToInt(i -> i).toArray(), 0, deletes.size());
+        	jgen.writeEndObject();
+        }
+        if(!updates.isEmpty()) {
+        	jgen.writeStartObject();
+        	jgen.writeStringField("op", "update");
+        	jgen.writeFieldName("index");
+        	jgen.writeArray(updates.stream().mapToInt(i -> i).toArray(), 0, updates.size());
+        	jgen.writeFieldName("rows");
+        	jgen.writeStartArray();
+        	for(int i : updates) {
+        		rs.absolute(i + 1);
+        		serializer.writeRow(rs, jgen, columnNames, columnTypes, colNamesToJsTypes, null);
+        	}
+        	jgen.writeEndArray();
+        	jgen.writeEndObject();
+        }
+        if(appendFrom < rowCount) {
+        	jgen.writeStartObject();
+        	jgen.writeStringField("op", "append");
+        	jgen.writeFieldName("rows");
+        	jgen.writeStartArray();
+        	if(appendFrom == 0) {
+        		rs.beforeFirst();
+        	} else {
+        		rs.absolute(appendFrom);
+        	}
+        	while(rs.next()) {
+        		serializer.writeRow(rs, jgen, columnNames, columnTypes, colNamesToJsTypes, null);
+        	}
+        	jgen.writeEndArray();
+        	jgen.writeEndObject();
+        }
+        jgen.writeEndArray();
+        jgen.writeEndObject();
+        jgen.close();
+        return baos.toString("UTF-8");
+	}
+}
@@ -28,6 +28,7 @@ package com.sqldashboards.webby;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.ResultSet;
@@ -53,7 +54,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.kx.c;
 import com.kx.c.KException;
+import com.sqldashboards.dashy.FlipResultSet;
 import com.timestored.kdb.QueryResultI;
 import com.kx.c.Dict;
 import static com.kx.c.n;
@@ -63,6 +66,32 @@ public class ResultSetSerializer extends JsonSerializer<ResultSet> {
 	
 	private static final Logger LOG = Logger.getLogger(ResultSetSerializer.class.getName());
 
+	/**
+	 * ROWS writes "data" as an array of objects of column name to value.
+	 * COLUMNS writes "columns" as an object of column name to an array of that column's values,
+	 * so that column names are only sent once rather than once per row.
+	 */
+	public static enum Format { 
+		ROWS, COLUMNS;
+		
+		/** @return The format named, ignoring case, or ROWS if null or not recognised. */
+		public static Format parse(String name) {
+			return name != null && (name.equalsIgnoreCase("columns") || name.equalsIgnoreCase("columnar")) ? COLUMNS : ROWS;
+		}
+	}
+	
+	private final Format format;
+	
+	public ResultSetSerializer() { this(Format.ROWS); }
+	
+	public ResultSetSerializer(Format format) { this.format = format == null ? Format.ROWS : format; }
+
+    /** Writes the value of one column at a given row, used to read kdb column arrays directly. */
+    @FunctionalInterface
+    private static interface ColumnWriter {
+    	void write(JsonGenerator jgen, int row) throws IOException, SQLException;
+    }
+
     public static class ResultSetSerializerException extends JsonProcessingException{
         private static final long serialVersionUID = -914957626413580734L;
 
@@ -138,6 +167,11 @@ public class ResultSetSerializer extends JsonSerializer<ResultSet> {
     }
     
     public String toString(ResultSet rs, boolean exceededMaxRows) throws IOException, JsonProcessingException {
+        return new String(toBytes(rs, exceededMaxRows), StandardCharsets.UTF_8);
+    }
+
+    /** @return The same JSON as {@link #toString(ResultSet, boolean)} as UTF-8 bytes, without building a String. */
+    public byte[] toBytes(ResultSet rs, boolean exceededMaxRows) throws IOException, JsonProcessingException {
     	ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
     	JsonGenerator jgen = new JsonFactory().createGenerator(baos);
         jgen.writeStartObject();
@@ -150,7 +184,7 @@ public class ResultSetSerializer extends JsonSerializer<ResultSet> {
         jgen.writeEndObject();
         jgen.close();
 
-        return baos.toString("UTF-8");
+        return baos.toByteArray();
     }
 
     private static long toEpochSecond(LocalTime t,LocalDate d,ZoneOffset o){
@@ -165,10 +199,29 @@ public class ResultSetSerializer extends JsonSerializer<ResultSet> {
      * Write LocalTime to serialization buffer in big endian format
      * @param t Time to serialize
      */
-    long toEpochSecond(LocalTime t){
+    static long toEpochSecond(LocalTime t){
        return (t==LOCAL_TIME_NULL)?Integer.MIN_VALUE:(int)((toEpochSecond(t,LocalDate.of(1970,1,1),ZoneOffset.ofTotalSeconds(0))*1000+t.getNano()/1000000)%MILLS_IN_DAY);
     }
 
+    /** @return Milliseconds since the epoch in UTC for any date/time type, milliseconds since midnight for times, or 0 if unrecognised. */
+    static long toEpochMillis(Object o) {
+    	long epoch = 0;
+    	if(o instanceof java.sql.Date) {
+    		epoch = ((java.sql.Date)o).getTime();
+    	} else if(o instanceof java.util.Date) {
+    		epoch = ((java.util.Date)o).getTime();
+    	} else if(o instanceof LocalDate) {
+    		epoch = ((LocalDate) o).atStartOfDay(ZoneId.of("UTC")).toInstant().toEpochMilli();
+    	} else if(o instanceof LocalTime) {
+    		epoch = toEpochSecond((LocalTime) o);
+    	} else if(o instanceof LocalDateTime) {
+    		epoch = ((LocalDateTime)o).toInstant(ZoneOffset.UTC).toEpochMilli();
+    	} else if(o instanceof Instant) {
+    		epoch = ((Instant)o).toEpochMilli();
+    	}
+    	return epoch;
+    }
+
     @Override
     public void serialize(ResultSet rs, JsonGenerator jgen, SerializerProvider provider) throws IOException, JsonProcessingException {
 
@@ -184,170 +237,302 @@ public class ResultSetSerializer extends JsonSerializer<ResultSet> {
             }
 
             jgen.writeStartObject();
-            jgen.writeFieldName("data");
-            jgen.writeStartArray();
             Map<String,String> colNamesToJsTypes = new HashMap<>(3);
+            FlipResultSet frs = rs instanceof FlipResultSet ? (FlipResultSet) rs : null;
+            ColumnWriter[] writers = null;
+            if(frs != null) {
+            	writers = new ColumnWriter[numColumns];
+            	for(int c = 0; c < numColumns; c++) {
+            		writers[c] = columnWriter(frs, c, columnNames, columnTypes, colNamesToJsTypes, provider);
+            	}
+            }
+            if(format == Format.COLUMNS) {
+            	jgen.writeFieldName("columns");
+            	jgen.writeStartObject();
+            	for(int c = 0; c < columnNames.length; c++) {
+            		jgen.writeFieldName(columnNames[c]);
+            		jgen.writeStartArray();
+            		if(frs != null) {
+            			for(int r = 0; r < frs.getRowCount(); r++) {
+            				writers[c].write(jgen, r);
+            			}
+            		} else {
+	            		rs.beforeFirst();
+	            		while (rs.next()) {
+	            			writeValue(rs, jgen, c, columnNames, columnTypes, colNamesToJsTypes, provider);
+	            		}
+            		}
+            		jgen.writeEndArray();
+            	}
+            	jgen.writeEndObject();
+            } else {
+	            jgen.writeFieldName("data");
+	            jgen.writeStartArray();
+	            if(frs != null) {
+	            	for(int r = 0; r < frs.getRowCount(); r++) {
+	            		jgen.writeStartObject();
+	            		for(int c = 0; c < numColumns; c++) {
+	            			jgen.writeFieldName(columnNames[c]);
+	            			writers[c].write(jgen, r);
+	            		}
+	            		jgen.writeEndObject();
+	            	}
+	            } else {
+		            rs.beforeFirst();
+		            while (rs.next()) {
+		                writeRow(rs, jgen, columnNames, columnTypes, colNamesToJsTypes, provider);
+		            }
+	            }
+	            jgen.writeEndArray();
+            }
+
+            writeTypes(jgen, columnNames, columnTypes, colNamesToJsTypes);
+            
+            jgen.writeEndObject();
+        } catch (SQLException e) {
+            throw new ResultSetSerializerException(e);
+        }
+    }
+
+    /**
+     * Write "types" as an object of column name to its javascript type hint, after the rows have been written
+     * as colNamesToJsTypes is populated while writing values.
+     */
+    void writeTypes(JsonGenerator jgen, String[] columnNames, int[] columnTypes, Map<String,String> colNamesToJsTypes) throws IOException {
+        jgen.writeFieldName("types");
+        jgen.writeStartObject();
+
+        for(int c = 0; c < columnNames.length; c++) {
+            jgen.writeFieldName(columnNames[c]);
+            String typ = colNamesToJsTypes.get(columnNames[c]);
+            if(typ != null) {
+                jgen.writeString(typ);
+            } else {
+                switch (columnTypes[c]) {
+                case Types.INTEGER:
+                case Types.NUMERIC:
+                case Types.DECIMAL:
+                case Types.FLOAT:
+                case Types.REAL:
+                case Types.DOUBLE:
+                case Types.BIGINT:
+                    jgen.writeString("number");
+                    break;
+                case Types.NVARCHAR:
+                case Types.VARCHAR:
+                case Types.LONGNVARCHAR:
+                case Types.LONGVARCHAR:
+                    jgen.writeString("string");
+                    break;
+                default:
+                    jgen.writeString("");
+                    break;
+                }
+            }
+        }
+        jgen.writeEndObject();
+    }
+
+    /**
+     * @return A writer that reads column i of the kdb table directly from its typed array, with kdb nulls as JSON null.
+     * Output is the same as {@link #writeValue} would give reading the same cell through the ResultSet,
+     * which is used for the less common types.
+     */
+    private ColumnWriter columnWriter(FlipResultSet frs, int i, String[] columnNames, int[] columnTypes, 
+    		Map<String,String> colNamesToJsTypes, SerializerProvider provider) {
+    	Object col = frs.getFlip().y[i];
+    	if(col instanceof boolean[]) {
+    		boolean[] a = (boolean[]) col;
+    		return (jgen, r) -> jgen.writeBoolean(a[r]);
+    	} else if(col instanceof short[]) {
+    		short[] a = (short[]) col;
+    		return (jgen, r) -> { if(a[r] == Short.MIN_VALUE) { jgen.writeNull(); } else { jgen.writeNumber(a[r]); } };
+    	} else if(col instanceof int[]) {
+    		int[] a = (int[]) col;
+    		return (jgen, r) -> { if(a[r] == Integer.MIN_VALUE) { jgen.writeNull(); } else { jgen.writeNumber(a[r]); } };
+    	} else if(col instanceof long[]) {
+    		long[] a = (long[]) col;
+    		return (jgen, r) -> { if(a[r] == Long.MIN_VALUE) { jgen.writeNull(); } else { jgen.writeNumber(a[r]); } };
+    	} else if(col instanceof float[]) {
+    		float[] a = (float[]) col;
+    		// widened to double as the ResultSet path reads floats with getDouble
+    		return (jgen, r) -> { if(Float.isNaN(a[r])) { jgen.writeNull(); } else { jgen.writeNumber((double) a[r]); } };
+    	} else if(col instanceof double[]) {
+    		double[] a = (double[]) col;
+    		return (jgen, r) -> { if(Double.isNaN(a[r])) { jgen.writeNull(); } else { jgen.writeNumber(a[r]); } };
+    	} else if(col instanceof String[]) {
+    		String[] a = (String[]) col;
+    		// The empty symbol is kdb's null, which getString reads as null.
+    		return (jgen, r) -> jgen.writeString(a[r].isEmpty() ? null : a[r]);
+    	} else if(col instanceof Instant[] || col instanceof LocalDate[] || col instanceof LocalDateTime[] || col instanceof LocalTime[]) {
+    		Object[] a = (Object[]) col;
+    		if(frs.getRowCount() > 0) {
+    			String typ = col instanceof LocalTime[] ? "Time" : col instanceof LocalDate[] ? "DateOnly" : "Date";
+    			colNamesToJsTypes.putIfAbsent(columnNames[i], typ);
+    		}
+    		// Nulls are read as null, which toEpochMillis gives as 0.
+    		return (jgen, r) -> jgen.writeNumber(c.qn(a[r]) ? 0 : toEpochMillis(a[r]));
+    	}
+    	return (jgen, r) -> {
+    		frs.absolute(r + 1);
+    		writeValue(frs, jgen, i, columnNames, columnTypes, colNamesToJsTypes, provider);
+    	};
+    }
+
+    /**
+     * Write the current row of rs as one JSON object of column name to value.
+     * @param colNamesToJsTypes Populated with javascript type hints for any columns where the type is only known from the values.
+     */
+    void writeRow(ResultSet rs, JsonGenerator jgen, String[] columnNames, int[] columnTypes, 
+    		Map<String,String> colNamesToJsTypes, SerializerProvider provider) throws IOException, SQLException {
+        jgen.writeStartObject();
+        for (int i = 0; i < columnNames.length; i++) {
+            jgen.writeFieldName(columnNames[i]);
+            writeValue(rs, jgen, i, columnNames, columnTypes, colNamesToJsTypes, provider);
+        }
+        jgen.writeEndObject();
+    }
+
+    /** Write the value of column i (zero-based) in the current row of rs. */
+    private void writeValue(ResultSet rs, JsonGenerator jgen, int i, String[] columnNames, int[] columnTypes, 
+    		Map<String,String> colNamesToJsTypes, SerializerProvider provider) throws IOException, SQLException {
+        boolean b;
+        long l;
+        double d;
 
-            rs.beforeFirst();
-            while (rs.next()) {
-
-                boolean b;
-                long l;
-                double d;
-
-                jgen.writeStartObject();
-
-                for (int i = 0; i < columnNames.length; i++) {
-
-                    jgen.writeFieldName(columnNames[i]);
-                    switch (columnTypes[i]) {
-
-                    case Types.INTEGER:
-                        l = rs.getInt(i + 1);
-                        if (rs.wasNull()) {
-                            jgen.writeNull();
-                        } else {
-                            jgen.writeNumber(l);
-                        }
-                        break;
-
-                    case Types.BIGINT:
-                        l = rs.getLong(i + 1);
-                        if (rs.wasNull()) {
-                            jgen.writeNull();
-                        } else {
-                            jgen.writeNumber(l);
-                        }
-                        break;
-
-                    case Types.DECIMAL:
-                    case Types.NUMERIC:
-                        jgen.writeNumber(rs.getBigDecimal(i + 1));
-                        break;
-
-                    case Types.FLOAT:
-                    case Types.REAL:
-                    case Types.DOUBLE:
-                        d = rs.getDouble(i + 1);
-                        if (rs.wasNull()) {
-                            jgen.writeNull();
-                        } else {
-                            jgen.writeNumber(d);
-                        }
-                        break;
-
-                    case Types.NVARCHAR:
-                    case Types.VARCHAR:
-                    case Types.LONGNVARCHAR:
-                    case Types.LONGVARCHAR:
-                        jgen.writeString(rs.getString(i + 1));
-                        break;
-
-                    case Types.BOOLEAN:
-                    case Types.BIT:
-                        b = rs.getBoolean(i + 1);
-                        if (rs.wasNull()) {
-                            jgen.writeNull();
-                        } else {
-                            jgen.writeBoolean(b);
-                        }
-                        break;
-
-                    case Types.BINARY:
-                    case Types.VARBINARY:
-                    case Types.LONGVARBINARY:
-                        jgen.writeBinary(rs.getBytes(i + 1));
-                        break;
-
-                    case Types.TINYINT:
-                    case Types.SMALLINT:
-                        l = rs.getShort(i + 1);
-                        if (rs.wasNull()) {
-                            jgen.writeNull();
-                        } else {
-                            jgen.writeNumber(l);
-                        }
-                        break;
-
-                    case Types.DATE:
-                    case Types.TIMESTAMP:
-                    case Types.TIME:     
-                    case Types.TIME_WITH_TIMEZONE:     
-                    case Types.TIMESTAMP_WITH_TIMEZONE:     
-                    	
-                    	Object o = rs.getObject(i+1);
-                    	long epoch = 0;
-                    	if(o instanceof java.sql.Date) {
-                    		epoch = ((java.sql.Date)o).getTime();
-                    	} else if(o instanceof java.util.Date) {
-                    		epoch = ((java.util.Date)o).getTime();
-                    	} else if(o instanceof LocalDate) {
-                    		epoch = ((LocalDate) o).atStartOfDay(ZoneId.of("UTC")).toInstant().toEpochMilli();
-                    	} else if(o instanceof LocalTime) {
-                    		epoch = toEpochSecond((LocalTime) o);
-                    	} else if(o instanceof LocalDateTime) {
-                    		epoch = ((LocalDateTime)o).toInstant(ZoneOffset.UTC).toEpochMilli();
-                    	} else if(o instanceof Instant) {
-                    		epoch = ((Instant)o).toEpochMilli();
-                    	}
-                    	jgen.writeNumber(epoch);
-                    	int ct = columnTypes[i];
-                    	String typ = ct == Types.TIME || ct == Types.TIME_WITH_TIMEZONE ? "Time" : 
-                    			(ct == Types.DATE ? "DateOnly" : "Date");
-                    	colNamesToJsTypes.putIfAbsent(columnNames[i], typ);
-                        break;
-
-                    case Types.BLOB:
-                        Blob blob = rs.getBlob(i);
-                        provider.defaultSerializeValue(blob.getBinaryStream(), jgen);
-                        blob.free();
-                        break;
-
-                    case Types.CLOB:
-                        Clob clob = rs.getClob(i);
-                        provider.defaultSerializeValue(clob.getCharacterStream(), jgen);
-                        clob.free();
-                        break;
-
-                    case Types.ARRAY:
-                        boolean isNumArray = true;
-                    	Object oo = rs.getObject(i+1); // notice this is getObject. getArray doesn't work for H2
-                		if(oo instanceof int[]) { jgen.writeArray((int[])oo, 0, ((int[])oo).length); }
-                		else if(oo instanceof long[]) {  jgen.writeArray((long[])oo, 0, ((long[])oo).length); }
-                		else if(oo instanceof double[]) { jgen.writeArray((double[])oo, 0, ((double[])oo).length); }
-                		else if(oo instanceof String[]) { jgen.writeArray((String[])oo, 0, ((String[])oo).length); }
-                		else if(oo instanceof Object[]) {
-                    		jgen.writeStartArray();
-                    		Object[] oa = (Object[])oo;
-                    		for(int mi=0;mi<oa.length;mi++) {
-                    			jgen.writeObject(oa[mi]);
-                    		}
-                    		jgen.writeEndArray();
-                    	} else {
-                    		isNumArray = false;
-                    	}
-                		if(isNumArray) {
-                			colNamesToJsTypes.putIfAbsent(columnNames[i], "numarray");
-                		}
-                        break;
-
-                    case Types.STRUCT:
-                        throw new RuntimeException("ResultSetSerializer not yet implemented for SQL type STRUCT");
-
-                    case Types.DISTINCT:
-                        throw new RuntimeException("ResultSetSerializer not yet implemented for SQL type DISTINCT");
-
-                    case Types.REF:
-                        throw new RuntimeException("ResultSetSerializer not yet implemented for SQL type REF");
-
-                    case Types.JAVA_OBJECT:
-                    default:
-                    	Object obj = rs.getObject(i + 1);
-                    	if(obj instanceof Timestamp) {
-                    		// TODO losing accuracy here
-                        	jgen.writeNumber(((Timestamp)  obj).getTime());
-                        	colNamesToJsTypes.putIfAbsent(columnNames[i], "Date");
-                    	} else {
+        switch (columnTypes[i]) {
+
+        case Types.INTEGER:
+            l = rs.getInt(i + 1);
+            if (rs.wasNull()) {
+                jgen.writeNull();
+            } else {
+                jgen.writeNumber(l);
+            }
+            break;
+
+        case Types.BIGINT:
+            l = rs.getLong(i + 1);
+            if (rs.wasNull()) {
+                jgen.writeNull();
+            } else {
+                jgen.writeNumber(l);
+            }
+            break;
+
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            jgen.writeNumber(rs.getBigDecimal(i + 1));
+            break;
+
+        case Types.FLOAT:
+        case Types.REAL:
+        case Types.DOUBLE:
+            d = rs.getDouble(i + 1);
+            if (rs.wasNull()) {
+                jgen.writeNull();
+            } else {
+                jgen.writeNumber(d);
+            }
+            break;
+
+        case Types.NVARCHAR:
+        case Types.VARCHAR:
+        case Types.LONGNVARCHAR:
+        case Types.LONGVARCHAR:
+            jgen.writeString(rs.getString(i + 1));
+            break;
+
+        case Types.BOOLEAN:
+        case Types.BIT:
+            b = rs.getBoolean(i + 1);
+            if (rs.wasNull()) {
+                jgen.writeNull();
+            } else {
+                jgen.writeBoolean(b);
+            }
+            break;
+
+        case Types.BINARY:
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+            jgen.writeBinary(rs.getBytes(i + 1));
+            break;
+
+        case Types.TINYINT:
+        case Types.SMALLINT:
+            l = rs.getShort(i + 1);
+            if (rs.wasNull()) {
+                jgen.writeNull();
+            } else {
+                jgen.writeNumber(l);
+            }
+            break;
+
+        case Types.DATE:
+        case Types.TIMESTAMP:
+        case Types.TIME:     
+        case Types.TIME_WITH_TIMEZONE:     
+        case Types.TIMESTAMP_WITH_TIMEZONE:     
+        	
+        	jgen.writeNumber(toEpochMillis(rs.getObject(i+1)));
+        	int ct = columnTypes[i];
+        	String typ = ct == Types.TIME || ct == Types.TIME_WITH_TIMEZONE ? "Time" : 
+        			(ct == Types.DATE ? "DateOnly" : "Date");
+        	colNamesToJsTypes.putIfAbsent(columnNames[i], typ);
+            break;
+
+        case Types.BLOB:
+            Blob blob = rs.getBlob(i);
+            provider.defaultSerializeValue(blob.getBinaryStream(), jgen);
+            blob.free();
+            break;
+
+        case Types.CLOB:
+            Clob clob = rs.getClob(i);
+            provider.defaultSerializeValue(clob.getCharacterStream(), jgen);
+            clob.free();
+            break;
+
+        case Types.ARRAY:
+            boolean isNumArray = true;
+        	Object oo = rs.getObject(i+1); // notice this is getObject. getArray doesn't work for H2
+    		if(oo instanceof int[]) { jgen.writeArray((int[])oo, 0, ((int[])oo).length); }
+    		else if(oo instanceof long[]) {  jgen.writeArray((long[])oo, 0, ((long[])oo).length); }
+    		else if(oo instanceof double[]) { jgen.writeArray((double[])oo, 0, ((double[])oo).length); }
+    		else if(oo instanceof String[]) { jgen.writeArray((String[])oo, 0, ((String[])oo).length); }
+    		else if(oo instanceof Object[]) {
+        		jgen.writeStartArray();
+        		Object[] oa = (Object[])oo;
+        		for(int mi=0;mi<oa.length;mi++) {
+        			jgen.writeObject(oa[mi]);
+        		}
+        		jgen.writeEndArray();
+        	} else {
+        		isNumArray = false;
+        	}
+    		if(isNumArray) {
+    			colNamesToJsTypes.putIfAbsent(columnNames[i], "numarray");
+    		}
+            break;
+
+        case Types.STRUCT:
+            throw new RuntimeException("ResultSetSerializer not yet implemented for SQL type STRUCT");
+
+        case Types.DISTINCT:
+            throw new RuntimeException("ResultSetSerializer not yet implemented for SQL type DISTINCT");
+
+        case Types.REF:
+            throw new RuntimeException("ResultSetSerializer not yet implemented for SQL type REF");
+
+        case Types.JAVA_OBJECT:
+        default:
+        	Object obj = rs.getObject(i + 1);
+        	if(obj instanceof Timestamp) {
+        		// TODO losing accuracy here
+            	jgen.writeNumber(((Timestamp)  obj).getTime());
+            	colNamesToJsTypes.putIfAbsent(columnNames[i], "Date");
+        	} else {
 	                    	try {
 	                        	colNamesToJsTypes.putIfAbsent(columnNames[i], obj instanceof Number ? "number" : "string");
 	                        	if(provider != null) {
@@ -358,53 +543,8 @@ public class ResultSetSerializer extends JsonSerializer<ResultSet> {
 	                    	} catch(IOException ioe) {
 	                    		LOG.warning("Unrecognised " + columnNames[i] + " of type " + columnTypes[i] + " with value: " + obj);
 	                    	}
-                    	}
-                        break;
-                    }
-                }
-
-                jgen.writeEndObject();
-            }
-
-            jgen.writeEndArray();
-
-            jgen.writeFieldName("types");
-            jgen.writeStartObject();
-
-            for(int c = 0; c < columnNames.length; c++) {
-				jgen.writeFieldName(columnNames[c]);
-				String typ = colNamesToJsTypes.get(columnNames[c]);
-				if(typ != null) {
-    				jgen.writeString(typ);
-				} else {
-		             switch (columnTypes[c]) {
-		                case Types.INTEGER:
-		                case Types.NUMERIC:
-		                case Types.DECIMAL:
-		                case Types.FLOAT:
-		                case Types.REAL:
-		                case Types.DOUBLE:
-		                case Types.BIGINT:
-		    				jgen.writeString("number");
-		    				break;
-	                    case Types.NVARCHAR:
-	                    case Types.VARCHAR:
-	                    case Types.LONGNVARCHAR:
-	                    case Types.LONGVARCHAR:
-		    				jgen.writeString("string");
-		    				break;
-						default:
-		    				jgen.writeString("");
-		    				break;
-		                }	
-				}
-            }
-
-            jgen.writeEndObject();
-            
-            jgen.writeEndObject();
-        } catch (SQLException e) {
-            throw new ResultSetSerializerException(e);
+        	}
+            break;
         }
     }
-}
\ No newline at end of file
+}
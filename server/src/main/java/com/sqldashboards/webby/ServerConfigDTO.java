@@ -72,10 +72,18 @@ public class ServerConfigDTO {
 	private String queryWrapPre = "";
 	private String queryWrapPost = "";
 	private boolean wrapQuery = true;
+	/** Compress kdb IPC messages sent to this server. */
+	private boolean compress = false;
+	/** Seconds a query may run before it is cancelled, 0 for no limit. */
+	@PositiveOrZero
+	private int queryTimeout = 0;
 
 	public static ServerConfigDTO getServerConfig(com.sqldashboards.dashy.ServerConfig s) {
-		return new ServerConfigDTO(s.getHost(), s.getPort(), s.getUsername(), s.getPassword(), s.getName(), 
+		ServerConfigDTO dto = new ServerConfigDTO(s.getHost(), s.getPort(), s.getUsername(), s.getPassword(), s.getName(), 
 				s.getJdbcType(), s.getDatabase(), s.getQueryWrapPre(), s.getQueryWrapPost());
+		dto.setCompress(s.isCompress());
+		dto.setQueryTimeout(s.getQueryTimeout());
+		return dto;
 	}
 
 	public ServerConfigDTO(@NonNull String host, int port, String username, String password, String name,
@@ -151,6 +159,6 @@ public class ServerConfigDTO {
 
 	public com.sqldashboards.dashy.ServerConfig toDashySC() {
 		return new ServerConfig(getHost(), getPort(), getUsername(), getPassword(), 
-				getName(), getJdbcType(), getDatabase(), null,  getQueryWrapPre(), getQueryWrapPost());
+				getName(), getJdbcType(), getDatabase(), null,  getQueryWrapPre(), getQueryWrapPost(), isCompress(), getQueryTimeout());
 	}
 }
@@ -27,13 +27,16 @@
 package com.sqldashboards.webby;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -41,8 +44,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sqldashboards.dashy.QueryEngine2;
 import com.sqldashboards.dashy.QueryEngine2.ArgType;
 import com.sqldashboards.dashy.QueryEngine2.ArgVal;
+import com.sqldashboards.dashy.QueryEngine2.DispatchMode;
 import com.sqldashboards.dashy.QueryEngine2.QueryEngineListener;
 import com.sqldashboards.dashy.QueryEngine2.SendingRate;
+import com.sqldashboards.dashy.SharedQueryCache.CachedResult;
+import com.sqldashboards.dashy.SharedScheduler;
+import com.sqldashboards.dashy.SubscriptionTable.TableDelta;
 import com.sqldashboards.shared.ConnectionManager;
 import com.sqldashboards.dashy.Queryable;
 
@@ -53,11 +60,13 @@ import io.micronaut.websocket.annotation.OnClose;
 import io.micronaut.websocket.annotation.OnMessage;
 import io.micronaut.websocket.annotation.OnOpen;
 import io.micronaut.websocket.annotation.ServerWebSocket;
-import jakarta.inject.Inject;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import lombok.NonNull;
 import lombok.extern.java.Log;
 import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 import com.google.common.base.Preconditions;
 
 
@@ -74,10 +83,13 @@ public class WebSocketServer {
 
 	private static final Map<WebSocketSession,DashboardEngine> userToEngine = new ConcurrentHashMap<>();
 	private static final Map<WebSocketSession,Stats> userToStats = new ConcurrentHashMap<>();
-	@Inject ServerConfigRepository serverConfigRepository;
 	private static Map<String,String> keysToUser = new ConcurrentHashMap<String, String>();
 	@Getter private static int maxActiveDashboardCount = 0;
 	@Getter private static int maxActiveUserCount = 0;
+	private static final ObjectMapper QUERYABLE_MAPPER = new ObjectMapper();
+	private static final byte[] QUERYABLE_PREFIX = "{ \"queryable\":".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] DATA_PREFIX = ", \"data\":".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] DATA_SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
 	 
 	private static class Stats {
 		private int ping = 0;
@@ -106,14 +118,10 @@ public class WebSocketServer {
         log.info("(" + (user == null ? "unknown" : user) + ") Joined [" + k + "]");
         if(user != null) {
 //          session.sendAsync(msg);
-            // Convert from one type of server config to the other and create connman now.
-            // TODO THis connection manager won't receive updates during running.
+            // All sessions share the application connection manager and its pools, 
+            // which DbServerController keeps up to date as servers are edited.
         	userToStats.put(session, new Stats());
-            ConnectionManager connMan = ConnectionManager.newInstance();
-            for(ServerConfigDTO sc : serverConfigRepository.findAll()) {
-            	connMan.addServer(sc.toDashySC());
-            }
-            userToEngine.put(session, new DashboardEngine(session, connMan, user));
+            userToEngine.put(session, new DashboardEngine(session, Application.CONNMAN, user));
             if(userToEngine.size() > maxActiveDashboardCount) {
             	maxActiveDashboardCount = userToEngine.size();
             }
@@ -148,11 +156,22 @@ public class WebSocketServer {
 				return; // Ignore - it's a reply to our ping.
 			} else if(msg.startsWith("addq:") || msg.startsWith("subq:")) {
 				Queryable q = objectMapper.readValue(msg.substring("subq:".length()), Queryable.class);
-	        	success = msg.startsWith("add") ? de.queryEngine.add(q) : de.queryEngine.remove(q);
+	        	success = msg.startsWith("add") ? de.queryEngine.add(q) : de.remove(q);
 	        } else if(msg.startsWith("setk:")) {
 	        	ArgEntry[] argEntries = objectMapper.readValue(msg.substring("setk:".length()), ArgEntry[].class);
         		de.queryEngine.putArgs(argsToMap(argEntries));
 	        	success = true;
+	        } else if(msg.startsWith("setformat:")) {
+	        	String format = msg.substring("setformat:".length()).trim();
+	        	de.setArrow(format.equalsIgnoreCase("arrow"));
+	        	de.setFormat(ResultSetSerializer.Format.parse(format));
+	        	success = true;
+	        } else if(msg.startsWith("setdelta:")) {
+	        	DeltaSettings ds = objectMapper.readValue(msg.substring("setdelta:".length()), DeltaSettings.class);
+	        	success = de.setDelta(ds.isEnabled() && Application.CONFIG.isWebsocket_delta(), ds.getKeys());
+	        } else if(msg.startsWith("snap:")) {
+				Queryable q = objectMapper.readValue(msg.substring("snap:".length()), Queryable.class);
+	        	success = de.snapshot(q);
 	        } else if(msg.startsWith("setdash:")) {
 	        	String[] setdashArgs = msg.substring(8).split(",");
 	        	try {
@@ -194,6 +213,17 @@ public class WebSocketServer {
 	}
 
 
+	/** 
+	 * Client request to receive only changed rows, optionally matching rows by the key columns.
+	 * The dashboard UI has no key column setting so sends no keys and rows are matched by position,
+	 * keys are for other websocket clients.
+	 */
+	@Data
+	public static class DeltaSettings {
+		private boolean enabled;
+		private List<String> keys;
+	}
+
 	@OnClose 
     public void onClose(String k, WebSocketSession session) {
         log.info("[" + k + "] Disconnected.");
@@ -210,19 +240,33 @@ public class WebSocketServer {
         final QueryEngine2 queryEngine;
 		private final WebSocketSession session;
 		@Getter private final String user;
-		private ScheduledExecutorService scheduler;
+		private final ScheduledFuture<?> heartbeat;
 		@Getter private int dashId;
 		@Getter private int versionId;
+		/** Non-null when the client has asked for row-level deltas rather than full tables. */
+		private volatile ResultSetDelta resultSetDelta = null;
+		/** Summary of the last table sent per queryable, only kept while deltas are enabled. */
+		private final Map<Queryable,ResultSetDelta.RowState> deltaStates = new ConcurrentHashMap<>();
+		/** Version of the subscription table the client last received per queryable, only kept while deltas are enabled. */
+		private final Map<Queryable,Long> tableVersions = new ConcurrentHashMap<>();
+		/** Layout of full tables sent to the client, row objects unless the client asks otherwise. */
+		@Setter private volatile ResultSetSerializer.Format format = ResultSetSerializer.Format.ROWS;
+		/** If true full tables are sent as binary Arrow IPC streams with the queryable in the schema metadata. */
+		@Setter private volatile boolean arrow = false;
         
         public DashboardEngine(@NonNull WebSocketSession session, ConnectionManager connectionManager, String user) {
 			this.session = Preconditions.checkNotNull(session);
 			this.user = Preconditions.checkNotNull(user);
 			queryEngine = QueryEngine2.newQueryEngine(connectionManager, user);
 			queryEngine.addListener(this);
+			if(Application.CONFIG.isQuery_dispatch_parallel()) {
+				queryEngine.setDispatchMode(DispatchMode.PARALLEL, Application.CONFIG.getQuery_max_inflight_per_session());
+			}
+			queryEngine.setDeadline(Application.CONFIG.getQuery_deadline_refresh_fraction(), Application.CONFIG.getQuery_deadline_min_seconds() * 1000L);
+			queryEngine.setMaxRefreshShare(Application.CONFIG.getQuery_max_refresh_share());
 			queryEngine.startUp();
 
 			// Heartbeat every 15 seconds as for example CloudFlare timeouts every 100s - https://community.cloudflare.com/t/cloudflare-websocket-timeout/5865/2
-			scheduler = Executors.newSingleThreadScheduledExecutor();
 			Runnable r = () -> {
 				Stats st = userToStats.get(session);
 				int delay = st.getPing() - st.getPong();
@@ -245,7 +289,7 @@ public class WebSocketServer {
 				
 				session.sendAsync("ping:" + (st == null ? "?" : (""+st.incPing()))); 
 			};
-			scheduler.scheduleWithFixedDelay(r, 2, 2, TimeUnit.SECONDS);
+			heartbeat = SharedScheduler.getInstance().scheduleWithFixedDelay(r, 2, 2, TimeUnit.SECONDS);
 		}
 
 		public void setDash(int dashId, int versionId) {
@@ -253,27 +297,112 @@ public class WebSocketServer {
 			this.versionId = versionId;
 		}
 
+		/** @return true if deltas are now enabled. */
+		public boolean setDelta(boolean enabled, List<String> keyColumns) {
+			resultSetDelta = enabled ? new ResultSetDelta(keyColumns) : null;
+			deltaStates.clear();
+			tableVersions.clear();
+			return enabled;
+		}
+
+		/** Stop running the queryable and forget the last table sent, the client discards its copy too. */
+		public boolean remove(Queryable queryable) {
+			boolean removed = queryEngine.remove(queryable);
+			deltaStates.remove(queryable);
+			tableVersions.remove(queryable);
+			return removed;
+		}
+
+		/** Client lost or never had the last table, send it in full on the next query. */
+		public boolean snapshot(Queryable queryable) {
+			deltaStates.remove(queryable);
+			tableVersions.remove(queryable);
+			return queryEngine.refresh(queryable);
+		}
+
 		private static String toJson(Queryable queryable) throws JsonProcessingException {
-			ObjectMapper objectMapper = new ObjectMapper();
-        	return objectMapper.writeValueAsString(queryable);
+        	return QUERYABLE_MAPPER.writeValueAsString(queryable);
         }
+
+		/**
+		 * @param data UTF-8 JSON of the table, wrapped not copied so a shared result is sent to every session from the same array.
+		 * @return Text frame of { "queryable":..., "data":data } 
+		 */
+		private static TextWebSocketFrame toDataFrame(Queryable queryable, byte[] data) throws JsonProcessingException {
+			byte[] qj = QUERYABLE_MAPPER.writeValueAsBytes(queryable);
+			return new TextWebSocketFrame(Unpooled.wrappedBuffer(QUERYABLE_PREFIX, qj, DATA_PREFIX, data, DATA_SUFFIX));
+		}
         
 		@Override public void tabChanged(Queryable queryable, ResultSet rs, boolean exceededMaxRows) {
+			tabChanged(queryable, rs, exceededMaxRows, null);
+		}
+
+		@Override public void tabChanged(Queryable queryable, ResultSet rs, boolean exceededMaxRows, CachedResult sharedResult) {
 	    	try {
-				String qj = "{ \"queryable\":" + toJson(queryable);
-				String rss = new ResultSetSerializer().toString(rs, exceededMaxRows);
-				String r = qj + ", \"data\":" + rss + "}";
-				session.sendAsync(r);
-			} catch (IOException e) {
+				ResultSetDelta rsd = resultSetDelta;
+				if(rsd != null) {
+					ResultSetDelta.Diff diff = rsd.diff(deltaStates.get(queryable), rs, exceededMaxRows);
+					deltaStates.put(queryable, diff.getState());
+					if(diff.getJson() != null) {
+						session.sendAsync("{ \"queryable\":" + toJson(queryable) + ", \"delta\":" + diff.getJson() + "}");
+						return;
+					}
+				}
+				if(arrow) {
+					session.sendAsync(new ArrowSerializer().toBytes(rs, exceededMaxRows, Collections.singletonMap("queryable", toJson(queryable))));
+					return;
+				}
+				// Shared results are serialized once and the same JSON sent to every session.
+				ResultSetSerializer.Format f = format;
+				byte[] rss = sharedResult != null ? sharedResult.serialize(f.name(), r -> new ResultSetSerializer(f).toBytes(r, exceededMaxRows))
+						: new ResultSetSerializer(f).toBytes(rs, exceededMaxRows);
+				session.sendAsync(toDataFrame(queryable, rss));
+			} catch (IOException | SQLException e) {
+				deltaStates.remove(queryable);
 				queryError(queryable, e);
 			}
 		}
 		
+		@Override public void tabUpdated(Queryable queryable, ResultSet rs, boolean exceededMaxRows, TableDelta delta) {
+			ResultSetDelta rsd = resultSetDelta;
+			if(rsd != null) {
+				Long sentVersion = tableVersions.put(queryable, delta.getToVersion());
+				if(sentVersion != null && sentVersion == delta.getFromVersion()) {
+					try {
+						if(delta.getChangeCount() == 0) {
+							return;
+						}
+						String json = rsd.toJson(rs, delta, exceededMaxRows);
+						if(json != null) {
+							session.sendAsync("{ \"queryable\":" + toJson(queryable) + ", \"delta\":" + json + "}");
+							return;
+						}
+					} catch (IOException | SQLException e) {
+						tableVersions.remove(queryable);
+						queryError(queryable, e);
+						return;
+					}
+				}
+				// The rows hashed for the last full table are out of date once table deltas were sent.
+				deltaStates.remove(queryable);
+			}
+			tabChanged(queryable, rs, exceededMaxRows);
+		}
+
 		@Override public void tabNeverChanged(Queryable queryable) {
 			// Used to let client know that result was unchanged. Without it, the client may think it's stale.
     		session.sendAsync("nochange:" + queryable.getQuery());
 		}
 		
+		@Override public void refreshRateChanged(Queryable queryable, long periodMillis, long avgQueryMillis) {
+			try {
+				session.sendAsync("{ \"queryable\":" + toJson(queryable) + ", \"refresh\":{ \"period\":" + periodMillis 
+						+ ", \"queryMillis\":" + avgQueryMillis + "}}");
+			} catch (JsonProcessingException e) {
+				log.warning("Could not send refresh rate: " + e);
+			}
+		}
+		
 		@Override
 		public void queryError(Queryable queryable, Exception e) {
 	    	try {
@@ -292,7 +421,7 @@ public class WebSocketServer {
 		
 		public void shutDown() {
 			queryEngine.shutDown();
-			scheduler.shutdown();
+			heartbeat.cancel(false);
 		}
     }
 }
\ No newline at end of file
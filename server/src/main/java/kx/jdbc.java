@@ -134,7 +134,8 @@ public Connection connect(String s,Properties p)throws SQLException{
 	} catch (ClassNotFoundException | NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
 		e.printStackTrace();
 	}
-	return new co(hpe,u,pas, true);
+	boolean zip = p!=null && Boolean.parseBoolean(p.getProperty("compress"));
+	return new co(hpe,u,pas, true, zip);
 }
 public DriverPropertyInfo[]getPropertyInfo(String s,Properties p)throws SQLException{return new DriverPropertyInfo[0];}
 static{try{DriverManager.registerDriver(new jdbc());}catch(Exception e){O(e.getMessage());}}
@@ -161,11 +162,16 @@ public static class co implements Connection{
  private c c;
 private boolean forceUseQ; // @RYAN - Allow forcing q on JDBC as for pulse most people want to send q code
  public co(String s,Object u,Object p,boolean forceUseQ)throws SQLException{
+  this(s,u,p,forceUseQ,false);
+ }
+ /** @param zip true to compress large messages sent to the server, see {@link c#zip(boolean)} */
+ public co(String s,Object u,Object p,boolean forceUseQ,boolean zip)throws SQLException{
   this.forceUseQ = forceUseQ;
    int idx=s.indexOf(":");
    try{
     c=new c(s.substring(0,idx),Integer.parseInt(s.substring(idx+1)),u==null?"":(String)u+":"+(String)p);
     c.setCollectResponseAsync(true);
+    c.zip(zip);
    }catch(Exception e){
     q(e);
    }
@@ -187,21 +193,10 @@ private boolean forceUseQ; // @RYAN - Allow forcing q on JDBC as for pulse most
  public Object[] ex(String s,Object[]p,int maxRows, int fetchSize)throws SQLException{
    if(streaming)
      throw new SQLException("A ResultSet is still open on this connection with messages queued from the server");
+   if(!pipelined.isEmpty())
+     throw new SQLException("Pipelined queries are awaiting responses on this connection");
    try{
-     boolean args=0<com.kx.c.n(p);
-     String lambda="{[maxRows;fetchSize;fn;args]$[not .Q.qt r:value[fn]args;::;count r:select[maxRows]from 0!r;{neg[.z.w]@/:-1_x;last x}(0N;fetchSize)#r;r]}["+(maxRows>0?maxRows:Integer.MAX_VALUE)+";"+(fetchSize>0?fetchSize:Integer.MAX_VALUE)+"]";
-     if(forceUseQ) {
-    	 if(args) {
-    		 c.k(s, p);	 
-    	 } else {
-    		 c.k(s); 
-    	 } 
-     } else {
-	     if(args)
-	       c.k(lambda,s.toCharArray(),p);
-	     else
-	       c.k(lambda,".o.ex".toCharArray(),s.toCharArray());
-     }
+     send(s,p,maxRows,fetchSize);
      Object[]msg=c.readMsg();
      streaming=(byte)msg[0]==(byte)0;// msg[0]==0 means async msg, i.e. streamed result. msg[0]==2 would be the final response msg already
      return new Object[]{streaming,msg[1]};
@@ -209,6 +204,69 @@ private boolean forceUseQ; // @RYAN - Allow forcing q on JDBC as for pulse most
    catch(Exception e){q(e);}
    return null;
  }
+ private void send(String s,Object[]p,int maxRows, int fetchSize)throws c.KException,IOException{
+   boolean args=0<com.kx.c.n(p);
+   String lambda="{[maxRows;fetchSize;fn;args]$[not .Q.qt r:value[fn]args;::;count r:select[maxRows]from 0!r;{neg[.z.w]@/:-1_x;last x}(0N;fetchSize)#r;r]}["+(maxRows>0?maxRows:Integer.MAX_VALUE)+";"+(fetchSize>0?fetchSize:Integer.MAX_VALUE)+"]";
+   if(forceUseQ) {
+  	 if(args) {
+  		 c.k(s, p);	 
+  	 } else if(fetchSize>0) {
+  		 // @RYAN - q query streamed in fetchSize chunks, as for SQL below, so large results can be read chunk by chunk.
+  		 c.k("{[maxRows;fetchSize;s]$[not .Q.qt r:value s;r;count r:select[maxRows]from 0!r;{neg[.z.w]@/:-1_x;last x}(0N;fetchSize)#r;r]}["
+  				 +(maxRows>0?maxRows:Integer.MAX_VALUE)+";"+fetchSize+"]",s.toCharArray());
+  	 } else {
+  		 c.k(s); 
+  	 } 
+   } else {
+     if(args)
+       c.k(lambda,s.toCharArray(),p);
+     else
+       c.k(lambda,".o.ex".toCharArray(),s.toCharArray());
+   }
+ }
+ // @RYAN - pipelining. kdb answers the sync requests on one handle in order, so several queries can be sent
+ // before any response is read and the responses matched to their request by position.
+ private final java.util.ArrayDeque<java.util.concurrent.CompletableFuture<Object>> pipelined=new java.util.ArrayDeque<>();
+ /**
+  * Send a query without reading its result, which is only read by {@link #readPipelined()}.
+  * Results are never streamed in chunks, they arrive as one response.
+  * @return future completed with the result object of the query or its SQLException.
+  */
+ public synchronized java.util.concurrent.CompletableFuture<Object> exAsync(String s,int maxRows)throws SQLException{
+   if(streaming)
+     throw new SQLException("A ResultSet is still open on this connection with messages queued from the server");
+   try{
+     send(s,new Object[0],maxRows,0);
+   }catch(Exception e){q(e);}
+   java.util.concurrent.CompletableFuture<Object> f=new java.util.concurrent.CompletableFuture<>();
+   pipelined.add(f);
+   return f;
+ }
+ /** @return The number of queries sent by {@link #exAsync(String, int)} whose response hasn't been read. */
+ public synchronized int getPipelinedCount(){return pipelined.size();}
+ /**
+  * Read the responses to every query sent by {@link #exAsync(String, int)}, completing each future in turn.
+  * A query that failed in kdb fails only its own future. 
+  * @throws SQLException if the connection failed, every future still waiting is failed with the same exception. 
+  */
+ public synchronized void readPipelined()throws SQLException{
+   while(!pipelined.isEmpty()){
+     try{
+       Object[]msg=c.readMsg();
+       if((byte)msg[0]!=(byte)2) // only response messages answer a request
+         continue;
+       pipelined.poll().complete(msg[1]);
+     }catch(c.KException e){
+       pipelined.poll().completeExceptionally(new SQLException(e.getMessage()));
+     }catch(Exception e){
+       SQLException sqe=new SQLException(e.getMessage());
+       java.util.concurrent.CompletableFuture<Object> f;
+       while((f=pipelined.poll())!=null)
+         f.completeExceptionally(sqe);
+       throw sqe;
+     }
+   }
+ }
  public rs qx(String s)throws SQLException{try{c.k(s);return new rs(null,new Object[]{Boolean.FALSE,c.readMsg()[1]});}catch(Exception e){q(e);return null;}}
  public rs qx(String s,Object x)throws SQLException{try{c.k(s,x);return new rs(null,new Object[]{Boolean.FALSE,c.readMsg()[1]});}catch(Exception e){q(e);return null;}}
  private boolean a=true;
@@ -330,7 +388,8 @@ public static class st implements Statement{
  public int getMaxFieldSize()throws SQLException{return 0;}
  public void setMaxFieldSize(int i)throws SQLException{}
  public void setEscapeProcessing(boolean b)throws SQLException{}
- public void cancel()throws SQLException{}
+ // @RYAN - kdb can't interrupt a running query, closing the handle frees the thread waiting for its result and the connection is discarded.
+ public void cancel()throws SQLException{co x=co;if(x!=null)x.close();}
  public SQLWarning getWarnings()throws SQLException{return null;}
  public void clearWarnings()throws SQLException{}
  // positioned update? different statement?
@@ -616,6 +675,8 @@ public static class rs implements ResultSet{
    }catch(UnsupportedEncodingException ex){throw new SQLException(ex);}
  }
  public ResultSetMetaData getMetaData()throws SQLException{return new rm(f,d);}
+ // @RYAN - expose the received table so Pulse can serialize the columns directly. null if streamed in chunks.
+ public c.Flip getFlip(){return streamed||d==null?null:new c.Flip(new c.Dict(f,d));}
  public int findColumn(String s)throws SQLException{return 1+find(f,s);}
  public boolean next()throws SQLException{
    if(r+1>=offset+n&&streamed&&!endOfStream&&st!=null){
@@ -632,7 +693,7 @@ public static class rs implements ResultSet{
  public boolean wasNull()throws SQLException{return o==null;}
 
 		public Object getObject(int i) throws SQLException {
-			o = c.at(d[i - 1], r);
+			o = c.at(d[i - 1], r - offset); // r counts rows across all streamed chunks, d only holds the current one
 			if(o instanceof char[]) {
 				return new String((char[]) o);
 			} else if(c.t(d[i - 1]) == 0 && toStringer != null && !isSupportedArrayType(d[i-1])) {
@@ -0,0 +1 @@
+ALTER TABLE "PUBLIC"."DATASOURCE" ADD COMPRESS BOOLEAN DEFAULT FALSE NOT NULL;
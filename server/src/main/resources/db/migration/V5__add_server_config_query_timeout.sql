@@ -0,0 +1 @@
+ALTER TABLE "PUBLIC"."DATASOURCE" ADD QUERY_TIMEOUT INTEGER DEFAULT 0 NOT NULL;
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+ 
+package com.sqldashboards.dashy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import org.junit.jupiter.api.Test;
+
+public class ColumnarResultSetTest {
+
+	/** Values arriving after long runs of nulls must not overrun the column arrays. */
+	@Test public void testSparseNullColumns() throws Exception {
+		try(Connection conn = DriverManager.getConnection("jdbc:h2:mem:sparseColumns")) {
+			try(Statement st = conn.createStatement()) {
+				st.execute("CREATE TABLE T(L BIGINT, D DOUBLE, S VARCHAR, TS TIMESTAMP)");
+			}
+			try(PreparedStatement ps = conn.prepareStatement("INSERT INTO T VALUES(?,?,?,?)")) {
+				for(int i=0; i<1000; i++) {
+					// first row set, then runs of nulls of growing length between values
+					boolean set = i == 0 || i == 201 || i == 202 || i == 600 || i == 999;
+					ps.setObject(1, set ? (Object) (long) i : null);
+					ps.setObject(2, set ? (Object) (i * 1.5) : null);
+					ps.setObject(3, set ? "s" + (i % 3) : null);
+					ps.setObject(4, set ? new Timestamp(1_000_000L * i + 123) : null);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+			
+			String sql = "SELECT * FROM T";
+			ColumnarResultSet crs;
+			try(Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+				crs = ColumnarResultSet.populate(rs);
+			}
+			try(Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+				int row = 0;
+				while(rs.next()) {
+					assertTrue(crs.next());
+					row++;
+					for(int c=1; c<=4; c++) {
+						assertEquals(rs.getObject(c), crs.getObject(c), "row " + row + " col " + c);
+					}
+				}
+				assertEquals(1000, row);
+				assertTrue(!crs.next());
+			}
+		}
+	}
+}
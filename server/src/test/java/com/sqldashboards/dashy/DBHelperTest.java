@@ -0,0 +1,80 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+ 
+package com.sqldashboards.dashy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import org.junit.jupiter.api.Test;
+
+public class DBHelperTest {
+
+	private static long fingerprint(Object[] colValues) throws SQLException {
+		return DBHelper.fingerprint(new SimpleResultSet(new String[] { "a" }, colValues));
+	}
+	
+	@Test public void testSameValuesSameFingerprint() throws SQLException {
+		Object[] a = { new String[] { "AAPL", "MSFT", "" } };
+		Object[] b = { new String[] { "AAPL", "MSFT", "" } };
+		assertEquals(fingerprint(a), fingerprint(b));
+	}
+	
+	@Test public void testStringHashCodeCollisions() throws SQLException {
+		// All of these pairs have equal String.hashCode()
+		assertNotEquals(fingerprint(new Object[] { new String[] { "Aa" } }), fingerprint(new Object[] { new String[] { "BB" } }));
+		assertNotEquals(fingerprint(new Object[] { new String[] { "AaBB" } }), fingerprint(new Object[] { new String[] { "BBAa" } }));
+		assertNotEquals(fingerprint(new Object[] { new String[] { "AaAa", "BBBB" } }), fingerprint(new Object[] { new String[] { "BBBB", "AaAa" } }));
+		assertNotEquals(fingerprint(new Object[] { new String[] { "xAaBBy" } }), fingerprint(new Object[] { new String[] { "xBBAay" } }));
+	}
+	
+	@Test public void testTimestampNanos() throws SQLException {
+		Timestamp t1 = new Timestamp(1_700_000_000_000L);
+		Timestamp t2 = new Timestamp(1_700_000_000_000L);
+		t2.setNanos(1);
+		assertEquals(t1.hashCode(), t2.hashCode());
+		assertNotEquals(fingerprint(new Object[] { new Timestamp[] { t1 } }), fingerprint(new Object[] { new Timestamp[] { t2 } }));
+	}
+	
+	@Test public void testBigDecimal() {
+		BigDecimal a = BigDecimal.valueOf(1, 31);
+		BigDecimal b = BigDecimal.valueOf(2, 0);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertNotEquals(DBHelper.hash(a), DBHelper.hash(b));
+		assertEquals(DBHelper.hash(new BigDecimal("1.50")), DBHelper.hash(new BigDecimal("1.50")));
+	}
+	
+	@Test public void testArrays() {
+		assertNotEquals(DBHelper.hash(new Object[] { "Aa" }), DBHelper.hash(new Object[] { "BB" }));
+		assertNotEquals(DBHelper.hash(new long[] { 1, 2 }), DBHelper.hash(new long[] { 2, 1 }));
+		assertEquals(DBHelper.hash(new long[] { 1, 2 }), DBHelper.hash(new long[] { 1, 2 }));
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+ 
+package com.sqldashboards.dashy;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import com.sqldashboards.shared.ConnectionManager;
+import com.sqldashboards.shared.JdbcTypes;
+
+public class QueryEngine2Test {
+
+	private static final String SLOW_QUERY = "SELECT SUM(X*X) FROM SYSTEM_RANGE(1, 3000000)";
+	
+	/** A query slower than its deadline must stretch its refresh period and deadline until it completes. */
+	@Test public void testSlowQueryWithDeadlineEventuallyCompletes() throws Exception {
+		ConnectionManager cm = ConnectionManager.newInstance();
+		ServerConfig h2 = new ServerConfig("localhost", 0, "", "", "h2", JdbcTypes.H2, "jdbc:h2:mem:slowDeadline", null, "", "", false, 0);
+		cm.addServer(h2);
+		SharedQueryCache.getInstance().setEnabled(false);
+		long cost = 0;
+		for(int i=0; i<5; i++) { // warm up
+			long start = System.currentTimeMillis();
+			cm.executeQuery(h2, SLOW_QUERY);
+			cost = System.currentTimeMillis() - start;
+		}
+		
+		List<String> events = new CopyOnWriteArrayList<>();
+		QueryEngine2 qe = QueryEngine2.newQueryEngine(cm, "test");
+		qe.setDeadline(0.8, 0);
+		qe.setMaxRefreshShare(0.5);
+		qe.addListener(new QueryEngine2.QueryEngineListener() {
+			@Override public void tabChanged(Queryable q, ResultSet rs, boolean exceededMaxRows) { events.add("result"); }
+			@Override public void tabNeverChanged(Queryable q) { events.add("result"); }
+			@Override public void queryError(Queryable q, Exception e) { events.add("error"); }
+		});
+		// The first deadline is 0.8 x a quarter of the query's cost.
+		qe.setQueryables(Arrays.asList(new Queryable("h2", SLOW_QUERY, (int) Math.max(20, cost / 4), "")));
+		qe.startUp();
+		try {
+			long end = System.currentTimeMillis() + Math.max(30_000, cost * 40);
+			while(!events.contains("result") && System.currentTimeMillis() < end) {
+				Thread.sleep(50);
+			}
+		} finally {
+			qe.shutDown();
+			SharedQueryCache.getInstance().setEnabled(true);
+		}
+		assertTrue(events.contains("error"), "Expected the first runs to time out, cost was " + cost + "ms: " + events);
+		assertTrue(events.contains("result"), "Query never completed: " + events);
+	}
+}
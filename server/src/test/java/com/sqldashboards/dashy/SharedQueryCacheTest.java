@@ -0,0 +1,72 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+ 
+package com.sqldashboards.dashy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.sqldashboards.shared.JdbcTypes;
+import com.timestored.kdb.QueryResult;
+import com.timestored.kdb.QueryResultI;
+
+public class SharedQueryCacheTest {
+
+	private static final ServerConfig SC = new ServerConfig("localhost", 0, "", "", "cacheTest", JdbcTypes.H2, "jdbc:h2:mem:cacheTest", null, "", "", false, 0);
+	
+	private static Supplier<QueryResultI> countingLoader(String query, AtomicInteger runs) {
+		return () -> {
+			runs.incrementAndGet();
+			try(Connection conn = DriverManager.getConnection(SC.getDatabase()); Statement st = conn.createStatement();
+					ResultSet rs = st.executeQuery(query)) {
+				return QueryResult.successfulResult(query, null, ColumnarResultSet.populate(rs), "", false);
+			} catch(Exception e) {
+				return QueryResult.exceptionResult(query, e);
+			}
+		};
+	}
+	
+	@Test public void testCompletedResultOnlyKeptForRequestedMaxAge() {
+		SharedQueryCache cache = SharedQueryCache.getInstance();
+		AtomicInteger runs = new AtomicInteger();
+		String adhoc = "SELECT 1 AS A";
+		cache.query(SC, adhoc, null, 0, null, countingLoader(adhoc, runs));
+		cache.query(SC, adhoc, null, 60_000, null, countingLoader(adhoc, runs));
+		assertEquals(2, runs.get()); // not retained as the first caller allowed no reuse
+		
+		cache.query(SC, adhoc, null, 10_000, null, countingLoader(adhoc, runs));
+		assertEquals(2, runs.get()); // retained for the second caller's max age
+	}
+}
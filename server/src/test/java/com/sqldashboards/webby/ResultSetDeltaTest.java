@@ -0,0 +1,114 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+package com.sqldashboards.webby;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.kx.c;
+import com.sqldashboards.dashy.FlipResultSet;
+import com.sqldashboards.webby.ResultSetDelta.Diff;
+import com.sqldashboards.webby.ResultSetDelta.RowState;
+
+/**
+ * Each delta must turn the previous table into the new one when applied by the client,
+ * or be null where only a full snapshot can do that.
+ */
+public class ResultSetDeltaTest {
+
+	private static final List<String> NO_KEYS = Collections.emptyList();
+	private static final List<String> SYM_KEY = Arrays.asList("sym");
+
+	private static ResultSet table(String[] syms, double[] prices) throws Exception {
+		return new FlipResultSet(new c.Flip(new c.Dict(new String[] { "sym", "px" }, new Object[] { syms, prices })), syms.length);
+	}
+	
+	private static ResultSet table(String... syms) throws Exception {
+		double[] prices = new double[syms.length];
+		Arrays.fill(prices, 1.0);
+		return table(syms, prices);
+	}
+	
+	/** @return The JSON of the delta from prev to next. */
+	private static String diff(List<String> keys, ResultSet prev, ResultSet next) throws Exception {
+		ResultSetDelta delta = new ResultSetDelta(keys);
+		RowState state = delta.diff(null, prev, false).getState();
+		return delta.diff(state, next, false).getJson();
+	}
+	
+	@Test public void testAppend() throws Exception {
+		String json = diff(NO_KEYS, table("A", "B", "C"), table("A", "B", "C", "D"));
+		assertEquals("{\"ops\":[{\"op\":\"append\",\"rows\":[{\"sym\":\"D\",\"px\":1.0}]}]}", json);
+	}
+	
+	@Test public void testUpdate() throws Exception {
+		ResultSet prev = table(new String[] { "A", "B", "C", "D" }, new double[] { 1, 2, 3, 4 });
+		ResultSet next = table(new String[] { "A", "B", "C", "D" }, new double[] { 1, 2.5, 3, 4 });
+		String json = diff(NO_KEYS, prev, next);
+		assertEquals("{\"ops\":[{\"op\":\"update\",\"index\":[1],\"rows\":[{\"sym\":\"B\",\"px\":2.5}]}]}", json);
+	}
+	
+	@Test public void testNoChange() throws Exception {
+		assertEquals("{\"ops\":[]}", diff(NO_KEYS, table("A", "B"), table("A", "B")));
+	}
+	
+	@Test public void testDeleteFromEnd() throws Exception {
+		String json = diff(NO_KEYS, table("A", "B", "C", "D"), table("A", "B", "C"));
+		assertEquals("{\"ops\":[{\"op\":\"delete\",\"index\":[3]}]}", json);
+	}
+	
+	/** Removing a row from the middle shifts every later row, only keys can match them up. */
+	@Test public void testKeyedDeleteUpdateAppend() throws Exception {
+		ResultSet prev = table(new String[] { "A", "B", "C", "D", "E", "F" }, new double[] { 1, 2, 3, 4, 5, 6 });
+		ResultSet next = table(new String[] { "A", "C", "D", "E", "F", "G" }, new double[] { 1, 3, 4.5, 5, 6, 7 });
+		String json = diff(SYM_KEY, prev, next);
+		assertEquals("{\"ops\":[{\"op\":\"delete\",\"index\":[1]}," 
+				+ "{\"op\":\"update\",\"index\":[2],\"rows\":[{\"sym\":\"D\",\"px\":4.5}]}," 
+				+ "{\"op\":\"append\",\"rows\":[{\"sym\":\"G\",\"px\":7.0}]}]}", json);
+		assertNull(diff(NO_KEYS, table("A", "B", "C", "D", "E", "F"), table("A", "C", "D", "E", "F")));
+	}
+	
+	@Test public void testSnapshotFallback() throws Exception {
+		ResultSetDelta delta = new ResultSetDelta(SYM_KEY);
+		Diff first = delta.diff(null, table("A", "B"), false);
+		assertNull(first.getJson(), "nothing sent yet");
+		
+		ResultSet otherColumns = new FlipResultSet(new c.Flip(new c.Dict(new String[] { "sym" }, new Object[] { new String[] { "A", "B" } })), 2);
+		assertNull(delta.diff(first.getState(), otherColumns, false).getJson(), "columns changed");
+		
+		assertNull(diff(NO_KEYS, table("A", "B", "C", "D"), table("W", "X", "Y", "Z")), "most rows changed");
+		assertNull(diff(SYM_KEY, table("A", "B", "C", "D"), table("D", "C", "B", "A")), "rows reordered");
+		assertNull(diff(SYM_KEY, table("A", "B", "C", "D", "E", "F"), table("A", "C", "D", "E", "F", "F")), "keys not unique");
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ *
+ *   $$$$$$$\            $$\                     
+ *   $$  __$$\           $$ |                     
+ *   $$ |  $$ |$$\   $$\ $$ | $$$$$$$\  $$$$$$\   
+ *   $$$$$$$  |$$ |  $$ |$$ |$$  _____|$$  __$$\  
+ *   $$  ____/ $$ |  $$ |$$ |\$$$$$$\  $$$$$$$$ |  
+ *   $$ |      $$ |  $$ |$$ | \____$$\ $$   ____|  
+ *   $$ |      \$$$$$$  |$$ |$$$$$$$  |\$$$$$$$\  
+ *   \__|       \______/ \__|\_______/  \_______|
+ *
+ *  Copyright c 2022-2023 TimeStored
+ *
+ *  Licensed under the Reciprocal Public License RPL-1.5
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/license/rpl-1-5/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ ******************************************************************************/
+ 
+ 
+package com.sqldashboards.webby;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.kx.c;
+import com.sqldashboards.dashy.FlipResultSet;
+
+/**
+ * The column writers used for {@link FlipResultSet} must give exactly the same bytes as reading
+ * each cell through the JDBC methods, including kdb nulls and empty symbols.
+ */
+public class ResultSetSerializerTest {
+
+	private static c.Flip newFlip() {
+		String[] colNames = { "sym", "b", "h", "i", "j", "e", "f", "p", "d", "z", "t", "n" };
+		Object[] cols = {
+			new String[] { "AAPL", "", "MSFT" },
+			new boolean[] { true, false, true },
+			new short[] { 1, Short.MIN_VALUE, -3 },
+			new int[] { 1, Integer.MIN_VALUE, -3 },
+			new long[] { 1L, Long.MIN_VALUE, 1_700_000_000_000L },
+			new float[] { 1.5f, Float.NaN, -0.25f },
+			new double[] { 1.5, Double.NaN, 1e300 },
+			new Instant[] { Instant.ofEpochMilli(1_700_000_000_123L), (Instant) c.NULL('p'), Instant.EPOCH },
+			new LocalDate[] { LocalDate.of(2024, 2, 29), (LocalDate) c.NULL('d'), LocalDate.of(2000, 1, 1) },
+			new LocalDateTime[] { LocalDateTime.of(2024, 2, 29, 13, 45, 1), (LocalDateTime) c.NULL('z'), LocalDateTime.of(2000, 1, 1, 0, 0) },
+			new LocalTime[] { LocalTime.of(13, 45, 1, 500_000_000), (LocalTime) c.NULL('t'), LocalTime.MIDNIGHT },
+			new c.Timespan[] { new c.Timespan(1_000_000_000L), (c.Timespan) c.NULL('n'), new c.Timespan(0) },
+		};
+		return new c.Flip(new c.Dict(colNames, cols));
+	}
+	
+	/** @return A ResultSet reading the same cells that the serializer can't recognise as a {@link FlipResultSet}. */
+	private static ResultSet asJdbc(ResultSet rs) {
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+			try {
+				return method.invoke(rs, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+		});
+	}
+	
+	@Test public void testFlipSameAsJdbc() throws Exception {
+		for(ResultSetSerializer.Format format : ResultSetSerializer.Format.values()) {
+			for(int maxRows : new int[] { 0, 2, 3 }) {
+				byte[] direct = new ResultSetSerializer(format).toBytes(new FlipResultSet(newFlip(), maxRows), false);
+				byte[] jdbc = new ResultSetSerializer(format).toBytes(asJdbc(new FlipResultSet(newFlip(), maxRows)), false);
+				assertArrayEquals(jdbc, direct, format + " maxRows=" + maxRows);
+			}
+		}
+	}
+	
+	@Test public void testNullsWritten() throws Exception {
+		String json = new String(new ResultSetSerializer().toBytes(new FlipResultSet(newFlip(), 3), false), StandardCharsets.UTF_8);
+		assertTrue(json.contains("{\"sym\":null,\"b\":false,\"h\":null,\"i\":null,\"j\":null,\"e\":null,\"f\":null,\"p\":0,\"d\":0,\"z\":0,\"t\":0"), json);
+	}
+}